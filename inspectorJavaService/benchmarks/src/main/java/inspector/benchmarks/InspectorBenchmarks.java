@@ -0,0 +1,218 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector.benchmarks;
+
+import inspector.Inspector;
+import inspector.PathsInJolie;
+import jolie.Interpreter;
+import jolie.cli.CommandLineParser;
+import jolie.runtime.FaultException;
+import jolie.runtime.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the operations of the inspector on a generated workspace, see SyntheticWorkspace.
+ * The allocation rate is reported when running with the gc profiler:
+ * java -jar target/benchmarks.jar -prof gc
+ * The size of the workspace is set with -p, e.g. -p moduleCount=500 -p fanOut=5.
+ * JOLIE_HOME must point to a Jolie installation, for the standard library and the include paths.
+ * Most operations are answered from the caches of the inspector after the first call,
+ * the *AfterEdit benchmarks change the source every time to measure a full inspection.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class InspectorBenchmarks {
+	@Param( { "10", "100" } )
+	public int moduleCount;
+
+	@Param( { "3" } )
+	public int fanOut;
+
+	@Param( { "10" } )
+	public int typesPerModule;
+
+	@Param( { "3" } )
+	public int nestingDepth;
+
+	private SyntheticWorkspace workspace;
+	private Inspector inspector;
+	private PathsInJolie pathsInJolie;
+	private String[] includePaths;
+	private String source;
+	private long edits = 0;
+
+	private Value inspectFileRequest;
+	private Value inspectModuleRequest;
+	private Value tokenRequest;
+	private Value workspaceRequest;
+	private Value renameRequest;
+	private Value packagePathRequest;
+	private Value symbolRequest;
+
+	@Setup( Level.Trial )
+	public void setUp() throws Exception {
+		workspace = SyntheticWorkspace.generate( moduleCount, fanOut, typesPerModule, nestingDepth );
+		File module = workspace.module( 0 );
+		source = Files.readString( module.toPath() );
+		includePaths = new String[] {
+			System.getenv( "JOLIE_HOME" ) + File.separator + "include",
+			workspace.root().toString()
+		};
+
+		Interpreter interpreter = createInterpreter( module );
+		inspector = new Inspector();
+		inspector.setInterpreter( interpreter );
+		pathsInJolie = new PathsInJolie();
+		pathsInJolie.setInterpreter( interpreter );
+
+		int[] typeUse = workspace.importedTypeUse( 0 );
+
+		inspectFileRequest = inspectionRequest( module, source );
+
+		inspectModuleRequest = inspectionRequest( module, source );
+		setPosition( inspectModuleRequest, typeUse );
+
+		tokenRequest = Value.create();
+		tokenRequest.setFirstChild( "filename", module.getAbsolutePath() );
+		tokenRequest.setFirstChild( "source", source );
+		setPosition( tokenRequest, typeUse );
+
+		workspaceRequest = Value.create();
+		workspaceRequest.setFirstChild( "rootUri", workspace.root().toString() );
+		workspaceRequest.setFirstChild( "symbol", "Type1" );
+		addIncludePaths( workspaceRequest );
+
+		renameRequest = Value.create();
+		renameRequest.setFirstChild( "newName", "RenamedType" );
+		renameRequest.getFirstChild( "textDocument" ).setFirstChild( "uri", module.getAbsolutePath() );
+		renameRequest.setFirstChild( "rootUri", workspace.root().toString() );
+		setPosition( renameRequest, typeUse );
+		addIncludePaths( renameRequest );
+
+		packagePathRequest = Value.create();
+		packagePathRequest.setFirstChild( "sourcePath", "file:" + module.getAbsolutePath() );
+		packagePathRequest.setFirstChild( "joliePackagePath", ".module" );
+
+		symbolRequest = Value.create();
+		symbolRequest.setFirstChild( "sourcePath", "file:" + module.getAbsolutePath() );
+		symbolRequest.setFirstChild( "packagePath", "." + SyntheticWorkspace.moduleName( workspace.moduleCount() - 1 ) );
+		symbolRequest.setFirstChild( "symbol", "Type" );
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown() throws Exception {
+		workspace.delete();
+	}
+
+	@Benchmark
+	public Value inspectFile() throws FaultException {
+		return inspector.inspectFile( inspectFileRequest );
+	}
+
+	@Benchmark
+	public Value inspectFileAfterEdit() throws FaultException {
+		// a new comment at the end changes the source without changing the program
+		Value request = inspectionRequest( workspace.module( 0 ), source + "\n// edit " + edits++ );
+		return inspector.inspectFile( request );
+	}
+
+	@Benchmark
+	public Value inspectModule() {
+		return inspector.inspectModule( inspectModuleRequest );
+	}
+
+	@Benchmark
+	public Value tokenAt() throws FaultException {
+		return inspector.tokenAt( tokenRequest );
+	}
+
+	@Benchmark
+	public Value inspectWorkspaceModules() throws FaultException {
+		return inspector.inspectWorkspaceModules( workspaceRequest );
+	}
+
+	@Benchmark
+	public Value inspectionToRename() throws FaultException {
+		return inspector.inspectionToRename( renameRequest );
+	}
+
+	@Benchmark
+	public Value inspectPackagePath() {
+		return pathsInJolie.inspectPackagePath( packagePathRequest );
+	}
+
+	@Benchmark
+	public Value inspectSymbol() {
+		return pathsInJolie.inspectSymbol( symbolRequest );
+	}
+
+	private Value inspectionRequest( File module, String moduleSource ) {
+		Value request = Value.create();
+		request.setFirstChild( "filename", module.getAbsolutePath() );
+		request.setFirstChild( "source", moduleSource );
+		addIncludePaths( request );
+		return request;
+	}
+
+	private void addIncludePaths( Value request ) {
+		for( String includePath : includePaths ) {
+			request.getChildren( "includePaths" ).add( Value.create( includePath ) );
+		}
+	}
+
+	private static void setPosition( Value request, int[] position ) {
+		request.getFirstChild( "position" ).setFirstChild( "line", position[ 0 ] );
+		request.getFirstChild( "position" ).setFirstChild( "character", position[ 1 ] );
+	}
+
+	/**
+	 * The operations only use the interpreter for its package paths, so an interpreter that is never started is enough
+	 */
+	private static Interpreter createInterpreter( File program ) throws Exception {
+		String[] args = { program.getAbsolutePath() };
+		Interpreter.Configuration configuration =
+			new CommandLineParser( args, InspectorBenchmarks.class.getClassLoader() ).getInterpreterConfiguration();
+		return new Interpreter( configuration, program.getParentFile(), Optional.empty() );
+	}
+}
@@ -0,0 +1,170 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Generates a workspace of Jolie modules for the benchmarks.
+ * Module i declares typesPerModule types nested nestingDepth levels deep, an interface with one operation per type
+ * and a service using it, and it imports the first type and the interface of the next fanOut modules.
+ * Modules only import modules with a higher index, so the imports never form a cycle.
+ */
+final class SyntheticWorkspace {
+	private final Path root;
+	private final int moduleCount;
+	private final int fanOut;
+	private final int typesPerModule;
+	private final int nestingDepth;
+
+	private SyntheticWorkspace( Path root, int moduleCount, int fanOut, int typesPerModule, int nestingDepth ) {
+		this.root = root;
+		this.moduleCount = moduleCount;
+		this.fanOut = fanOut;
+		this.typesPerModule = typesPerModule;
+		this.nestingDepth = nestingDepth;
+	}
+
+	static SyntheticWorkspace generate( int moduleCount, int fanOut, int typesPerModule, int nestingDepth )
+		throws IOException {
+		SyntheticWorkspace workspace = new SyntheticWorkspace( Files.createTempDirectory( "jolie-workspace" ),
+			Math.max( 1, moduleCount ), Math.max( 0, fanOut ), Math.max( 1, typesPerModule ),
+			Math.max( 0, nestingDepth ) );
+		for( int i = 0; i < workspace.moduleCount; i++ ) {
+			Files.writeString( workspace.module( i ).toPath(), workspace.source( i ) );
+		}
+		return workspace;
+	}
+
+	Path root() {
+		return root;
+	}
+
+	int moduleCount() {
+		return moduleCount;
+	}
+
+	File module( int i ) {
+		return root.resolve( moduleName( i ) + ".ol" ).toFile();
+	}
+
+	static String moduleName( int i ) {
+		return "module" + i;
+	}
+
+	static String typeName( int module, int type ) {
+		return "Type" + module + "_" + type;
+	}
+
+	static String interfaceName( int module ) {
+		return "Interface" + module;
+	}
+
+	/**
+	 * @return the position (line, character) of the first use of an imported type in the module,
+	 * or of its first type if it does not import anything
+	 */
+	int[] importedTypeUse( int i ) {
+		String[] lines = source( i ).split( "\n", -1 );
+		String name = i + 1 < moduleCount && fanOut > 0 ? typeName( i + 1, 0 ) : typeName( i, 0 );
+		for( int line = 0; line < lines.length; line++ ) {
+			int character = lines[ line ].indexOf( ": " + name );
+			if( character >= 0 ) {
+				return new int[] { line, character + 2 };
+			}
+		}
+		return new int[] { 0, 0 };
+	}
+
+	String source( int i ) {
+		StringBuilder source = new StringBuilder();
+		int lastImport = Math.min( moduleCount - 1, i + fanOut );
+		for( int j = i + 1; j <= lastImport; j++ ) {
+			source.append( "from ." ).append( moduleName( j ) ).append( " import " )
+				.append( typeName( j, 0 ) ).append( ", " ).append( interfaceName( j ) ).append( '\n' );
+		}
+		source.append( '\n' );
+
+		for( int t = 0; t < typesPerModule; t++ ) {
+			source.append( "type " ).append( typeName( i, t ) ).append( " {\n" );
+			appendFields( source, nestingDepth, "\t" );
+			for( int j = i + 1; j <= lastImport; j++ ) {
+				source.append( "\tref" ).append( j ).append( "?: " ).append( typeName( j, 0 ) ).append( '\n' );
+			}
+			source.append( "}\n\n" );
+		}
+
+		source.append( "interface " ).append( interfaceName( i ) ).append( " {\n" ).append( "RequestResponse:\n" );
+		for( int t = 0; t < typesPerModule; t++ ) {
+			source.append( "\toperation" ).append( i ).append( '_' ).append( t ).append( "( " )
+				.append( typeName( i, t ) ).append( " )( " ).append( typeName( i, (t + 1) % typesPerModule ) )
+				.append( " )" ).append( t + 1 < typesPerModule ? ",\n" : "\n" );
+		}
+		source.append( "}\n\n" );
+
+		source.append( "service Service" ).append( i ).append( " {\n" );
+		for( int j = i + 1; j <= lastImport; j++ ) {
+			source.append( "\toutputPort Port" ).append( j ).append( " {\n" )
+				.append( "\t\tlocation: \"local://Service" ).append( j ).append( "\"\n" )
+				.append( "\t\tinterfaces: " ).append( interfaceName( j ) ).append( "\n\t}\n" );
+		}
+		source.append( "\tinputPort Input {\n" )
+			.append( "\t\tlocation: \"local://Service" ).append( i ).append( "\"\n" )
+			.append( "\t\tinterfaces: " ).append( interfaceName( i ) ).append( "\n\t}\n" )
+			.append( "\tmain {\n\t\tnullProcess\n\t}\n}\n" );
+		return source.toString();
+	}
+
+	private static void appendFields( StringBuilder source, int depth, String indent ) {
+		source.append( indent ).append( "name: string\n" )
+			.append( indent ).append( "count?: int\n" )
+			.append( indent ).append( "tags*: string\n" );
+		if( depth > 0 ) {
+			source.append( indent ).append( "nested {\n" );
+			appendFields( source, depth - 1, indent + "\t" );
+			source.append( indent ).append( "}\n" );
+		}
+	}
+
+	void delete() throws IOException {
+		Files.walkFileTree( root, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException {
+				Files.delete( file );
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory( Path dir, IOException exc ) throws IOException {
+				Files.delete( dir );
+				return FileVisitResult.CONTINUE;
+			}
+		} );
+	}
+}
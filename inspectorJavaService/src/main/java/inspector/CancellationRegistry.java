@@ -0,0 +1,124 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the long-running operations of the Inspector, the ones going through the whole workspace,
+ * so that they can be stopped when they are not needed anymore.
+ * The JSON-RPC binding of Jolie does not tell the services the id of the request they are answering,
+ * so a $/cancelRequest cannot be matched with the operation it is meant for. Instead, at most one operation of each
+ * kind runs: a newer workspace symbol query, rename or references request cancels the one of the same kind that is
+ * still running, whose result the client would replace anyway. Each operation gets its own id for the logs.
+ * Operations check their token between the modules they go through, so a cancelled operation stops within
+ * the time of parsing a single module.
+ */
+final class CancellationRegistry {
+	/**
+	 * Tells a running operation whether it should stop
+	 */
+	static final class Token {
+		private final long id;
+		private volatile boolean cancelled = false;
+
+		private Token( long id ) {
+			this.id = id;
+		}
+
+		boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * @throws CancellationException if the operation was cancelled
+		 */
+		void check() {
+			if( cancelled ) {
+				throw new CancellationException( "Request " + id + " was cancelled" );
+			}
+		}
+	}
+
+	/**
+	 * What an operation answers, a newer operation replaces the running one of the same kind
+	 */
+	enum Kind {
+		SYMBOL_QUERY, RENAME, REFERENCES
+	}
+
+	@FunctionalInterface
+	interface Operation< T, E extends Exception > {
+		T run( Token token ) throws E;
+	}
+
+	/**
+	 * The token of operations that cannot be cancelled, e.g. the updates of the workspace index
+	 */
+	static final Token NONE = new Token( 0 );
+
+	private static final CancellationRegistry INSTANCE = new CancellationRegistry();
+
+	// the operation of each kind that is running
+	private final Map< Kind, Token > running = new ConcurrentHashMap<>();
+	private final AtomicLong nextId = new AtomicLong( 1 );
+	private final AtomicLong cancelled = new AtomicLong();
+
+	private CancellationRegistry() {}
+
+	static CancellationRegistry instance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Runs an operation that can be cancelled, cancelling the running operation of the same kind
+	 * @param kind what the operation answers
+	 * @param operation the operation, which is given its token
+	 * @return the result of the operation
+	 * @throws CancellationException if the operation was cancelled by a newer one of the same kind
+	 */
+	< T, E extends Exception > T run( Kind kind, Operation< T, E > operation ) throws E {
+		Token token = new Token( nextId.getAndIncrement() );
+		Token replaced = running.put( kind, token );
+		if( replaced != null ) {
+			replaced.cancelled = true;
+		}
+		try {
+			T result = operation.run( token );
+			token.check(); // the result of a cancelled operation is never used by the client
+			return result;
+		} catch( CancellationException e ) {
+			cancelled.incrementAndGet();
+			throw e;
+		} finally {
+			running.remove( kind, token );
+		}
+	}
+
+	long cancelled() {
+		return cancelled.get();
+	}
+}
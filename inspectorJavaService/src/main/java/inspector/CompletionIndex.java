@@ -0,0 +1,345 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.lang.parse.ast.InputPortInfo;
+import jolie.lang.parse.ast.InterfaceDefinition;
+import jolie.lang.parse.ast.OutputPortInfo;
+import jolie.lang.parse.ast.types.TypeDefinition;
+import jolie.lang.parse.util.ProgramInspector;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * The completion items of a module, in a sorted prefix index: the operations of the output ports (as "op@Port"),
+ * the ports, the types and the interfaces the module can use, and the keyword snippets, which are the same for
+ * every module.
+ * The items whose name starts with a prefix are found by a binary search, followed by a scan of the matching ones.
+ * The index of the latest version of every document is kept, and it is built again only when the document changed
+ * and compiles, so the completions of a document that is being typed come from its last version that compiled.
+ */
+final class CompletionIndex {
+	// the CompletionItemKind of the LSP
+	private static final int KIND_METHOD = 2;
+	private static final int KIND_CLASS = 7;
+	private static final int KIND_INTERFACE = 8;
+	private static final int KIND_KEYWORD = 14;
+	private static final int KIND_STRUCT = 22;
+
+	// the documents open in an editor, the least recently used indexes are dropped beyond this
+	private static final int MAX_DOCUMENTS = 64;
+
+	/**
+	 * A completion item, the rank orders the items of the same quality of match: operations, ports, types,
+	 * interfaces and then keywords
+	 */
+	static final class Item {
+		private final String label;
+		private final int kind;
+		private final String detail;
+		private final String documentation;
+		// a snippet, inserted instead of the label
+		private final String insertText;
+		private final int rank;
+
+		private Item( String label, int kind, String detail, String documentation, String insertText, int rank ) {
+			this.label = label;
+			this.kind = kind;
+			this.detail = detail;
+			this.documentation = documentation;
+			this.insertText = insertText;
+			this.rank = rank;
+		}
+
+		String label() {
+			return label;
+		}
+
+		int kind() {
+			return kind;
+		}
+
+		String detail() {
+			return detail;
+		}
+
+		String documentation() {
+			return documentation;
+		}
+
+		String insertText() {
+			return insertText;
+		}
+	}
+
+	/**
+	 * The best items for a position, at most the requested number of them
+	 */
+	static final class Completions {
+		private final List< Item > items;
+		private final boolean incomplete;
+
+		private Completions( List< Item > items, boolean incomplete ) {
+			this.items = items;
+			this.incomplete = incomplete;
+		}
+
+		List< Item > items() {
+			return items;
+		}
+
+		/**
+		 * @return true if there were more items, so the client asks again while the prefix grows
+		 */
+		boolean isIncomplete() {
+			return incomplete;
+		}
+	}
+
+	private static final CompletionIndex KEYWORDS = new CompletionIndex( List.of(
+		keyword( "outputPort", "outputPort ${1:PortName} {\n\tLocation: $2\n\tProtocol: $3\n\tInterfaces: $4\n}" ),
+		keyword( "inputPort", "inputPort ${1:PortName {\n\tLocation: $2\n\tProtocol: $3\n\tInterfaces: $4\n}" ),
+		keyword( "interface", "interface ${1:interfaceName} {\n\tRequestResponse: $2\n\tOneWay: $3\n}" ),
+		keyword( "main", "main\n{\n\t$0\n}" ),
+		keyword( "init", "init\n{\n\t$0\n}" ),
+		keyword( "constants", "constants {\n\t${1:constantName} = ${2:value}" ),
+		keyword( "include", "include \"${1:file}\"\n$0" ),
+		keyword( "while", "while ( ${1:condition} ) {\n\t$2\n}" ),
+		keyword( "undef", "undef ( ${0:variableName} )" ),
+		keyword( "type (basic)", "type ${1:typeName}: ${2:basicType}" ),
+		keyword( "type (choice)", "type ${1:typeName}: ${2:Type1} | ${3:Type2}" ),
+		keyword( "type (custom)", "type ${1:typeName}: ${2:rootType} {\n\t${3:subNodeName}: ${4:subNodeType}\n}" ),
+		keyword( "throws", "throws ${1:faultName}( ${2:faultType} )" ),
+		keyword( "throw", "throw( ${0:error} )" ),
+		keyword( "synchronized", "synchronized( ${1:token} ) {\n\t$2\n}" ),
+		keyword( "redirects", "Redirects: ${1:resourceName} => ${2:outputPortName}" ),
+		keyword( "provide", "provide\n\t${1:inputChoice}\nuntil\n\t${2:inputChoice}" ),
+		keyword( "is_defined", "is_defined( ${0:variableName} )" ),
+		keyword( "instanceof", "instanceof ${0:type}" ),
+		keyword( "install", "install( ${1:faultName} => ${2:faultCode} )" ),
+		keyword( "if", "if ( ${1:codition} ) {\n\t$2\n}" ),
+		keyword( "else", "else {\n\t$0\n}" ),
+		keyword( "else if", "else if ( ${0:condition} ) {\n\t$1\n}" ),
+		keyword( "foreach element", "for ( ${1:element} in ${2:array} ) {\n\t$3\n}" ),
+		keyword( "foreach", "foreach ( ${1:child} : ${2:parent} ) {\n\t$3\n}" ),
+		keyword( "for", "for ( ${1:init}, ${2:cond}, ${3:afterthought} ) {\n\t$4\n}" ),
+		keyword( "global", "global.${0:varName}" ),
+		keyword( "execution", "execution{ ${0:single|concurrent|sequential} }" ),
+		keyword( "define", "define ${1:procedureName}\n{\n\t$2\n}" ),
+		keyword( "embedded", "embedded {\n\t{1:Language}: \"${2:file_path}\" in ${3:PortName}\n}" ),
+		keyword( "cset", "cset {\n\t${1:correlationVariable}: ${2:alias}\n}" ),
+		keyword( "aggregates", "Aggregates: ${0:outputPortName}" ),
+		keyword( "from", "from ${0:module} import ${1:symbols}" ) ), Collections.emptyMap() );
+
+	private static final class Latest {
+		private final String source;
+		private final CompletionIndex index;
+
+		private Latest( String source, CompletionIndex index ) {
+			this.source = source;
+			this.index = index;
+		}
+	}
+
+	private static final Map< String, Latest > LATEST = new LinkedHashMap<>( 16, 0.75f, true ) {
+		@Override
+		protected boolean removeEldestEntry( Map.Entry< String, Latest > eldest ) {
+			return size() > MAX_DOCUMENTS;
+		}
+	};
+
+	// sorted by key, the name that is matched with the prefix, in lower case
+	private final String[] keys;
+	private final Item[] items;
+	// name of an operation -> the items completing "op@" with the output ports that have it
+	private final Map< String, List< Item > > portsByOperation;
+
+	private CompletionIndex( List< Item > items, Map< String, List< Item > > portsByOperation ) {
+		Item[] sorted = items.toArray( new Item[ 0 ] );
+		Arrays.sort( sorted, Comparator.comparing( item -> key( item.label ) ) );
+		this.items = sorted;
+		this.keys = new String[ sorted.length ];
+		for( int i = 0; i < sorted.length; i++ ) {
+			keys[ i ] = key( sorted[ i ].label );
+		}
+		this.portsByOperation = portsByOperation;
+	}
+
+	/**
+	 * @param program the parsed module, including its imports
+	 * @param signatures the signatures of the operations of the module
+	 * @return the index of the operations, ports, types and interfaces of the module
+	 */
+	static CompletionIndex of( ProgramInspector program, OperationSignatures signatures ) {
+		List< Item > items = new ArrayList<>();
+		Map< String, List< Item > > portsByOperation = new HashMap<>();
+		for( OperationSignatures.Signature signature : signatures.all() ) {
+			if( signature.isInputPort() ) {
+				continue;
+			}
+			String arguments = arguments( signature );
+			String documentation = signature.documentation();
+			items.add( new Item( signature.operation() + "@" + signature.port(), KIND_METHOD, signature.label(),
+				documentation, signature.operation() + "@" + signature.port() + arguments, 0 ) );
+			portsByOperation.computeIfAbsent( signature.operation(), operation -> new ArrayList<>() )
+				.add( new Item( signature.port(), KIND_CLASS, signature.label(), documentation,
+					signature.port() + arguments, 1 ) );
+		}
+		Set< String > names = new HashSet<>();
+		for( OutputPortInfo port : program.getOutputPorts() ) {
+			if( names.add( port.id() ) ) {
+				items.add( new Item( port.id(), KIND_CLASS, "outputPort", null, port.id(), 1 ) );
+			}
+		}
+		for( InputPortInfo port : program.getInputPorts() ) {
+			if( names.add( port.id() ) ) {
+				items.add( new Item( port.id(), KIND_CLASS, "inputPort", null, port.id(), 1 ) );
+			}
+		}
+		for( TypeDefinition type : program.getTypes() ) {
+			if( names.add( type.name() ) ) {
+				items.add( new Item( type.name(), KIND_STRUCT, "type", type.getDocumentation().orElse( null ),
+					type.name(), 2 ) );
+			}
+		}
+		for( InterfaceDefinition iface : program.getInterfaces() ) {
+			if( names.add( iface.name() ) ) {
+				items.add( new Item( iface.name(), KIND_INTERFACE, "interface", iface.getDocumentation().orElse( null ),
+					iface.name(), 3 ) );
+			}
+		}
+		return new CompletionIndex( items, portsByOperation );
+	}
+
+	/**
+	 * @param uri the document
+	 * @param source the version of the document
+	 * @param builder builds the index of the version if it is not the latest one of the document,
+	 * it returns null if the version does not compile, then the index of the previous version is kept
+	 * @return the index of the version or of the last version that compiled, an empty index if there is none
+	 */
+	static CompletionIndex latest( String uri, String source, Supplier< CompletionIndex > builder ) {
+		Latest previous;
+		synchronized( LATEST ) {
+			previous = LATEST.get( uri );
+		}
+		if( previous != null && previous.source.equals( source ) ) {
+			return previous.index;
+		}
+		CompletionIndex index = builder.get();
+		if( index == null ) {
+			index = previous != null ? previous.index
+				: new CompletionIndex( Collections.emptyList(), Collections.emptyMap() );
+		}
+		synchronized( LATEST ) {
+			LATEST.put( uri, new Latest( source, index ) );
+		}
+		return index;
+	}
+
+	/**
+	 * Drops the index of a document, e.g. when it is closed
+	 */
+	static void forget( String uri ) {
+		synchronized( LATEST ) {
+			LATEST.remove( uri );
+		}
+	}
+
+	/**
+	 * Finds the completions of the word before a position: the ports having the operation if the word follows
+	 * "op@", otherwise the operations, ports, types, interfaces and keywords starting with the word.
+	 * The items whose name starts with the word in the same case come first, then they are ordered by their
+	 * rank, the length of their name and their name.
+	 * @param line the text of the line
+	 * @param character the position in the line
+	 * @param limit how many items are returned at most
+	 * @return the best items
+	 */
+	Completions complete( String line, int character, int limit ) {
+		int end = Math.max( 0, Math.min( character, line.length() ) );
+		int start = wordStart( line, end );
+		String prefix = line.substring( start, end );
+		List< Item > candidates = new ArrayList<>();
+		if( start > 0 && line.charAt( start - 1 ) == '@' ) {
+			String operation = line.substring( wordStart( line, start - 1 ), start - 1 );
+			String key = key( prefix );
+			for( Item item : portsByOperation.getOrDefault( operation, Collections.emptyList() ) ) {
+				if( key( item.label ).startsWith( key ) ) {
+					candidates.add( item );
+				}
+			}
+		} else {
+			withPrefix( prefix, candidates );
+			KEYWORDS.withPrefix( prefix, candidates );
+		}
+		TopK< Item > best = new TopK<>( limit,
+			Comparator.< Item >comparingInt( item -> item.label.startsWith( prefix ) ? 0 : 1 )
+			.thenComparingInt( item -> item.rank )
+			.thenComparingInt( item -> item.label.length() )
+			.thenComparing( item -> item.label ) );
+		candidates.forEach( best::offer );
+		return new Completions( best.sorted(), candidates.size() > limit );
+	}
+
+	private void withPrefix( String prefix, List< Item > candidates ) {
+		String key = key( prefix );
+		int index = Arrays.binarySearch( keys, key );
+		// the first key that is not smaller than the prefix
+		int i = index >= 0 ? index : -index - 1;
+		while( i > 0 && keys[ i - 1 ].equals( key ) ) {
+			i--;
+		}
+		for( ; i < keys.length && keys[ i ].startsWith( key ); i++ ) {
+			candidates.add( items[ i ] );
+		}
+	}
+
+	/**
+	 * @return the arguments of a call of the operation, e.g. "( ${1:Request} )( ${2:Response} )"
+	 */
+	private static String arguments( OperationSignatures.Signature signature ) {
+		if( signature.responseType() == null ) {
+			return "( ${1:" + signature.requestType() + "} )";
+		}
+		String response = "void".equals( signature.responseType() ) ? "" : signature.responseType();
+		return "( ${1:" + signature.requestType() + "} )( ${2:" + response + "} )";
+	}
+
+	private static Item keyword( String label, String body ) {
+		return new Item( label, KIND_KEYWORD, null, null, body, 4 );
+	}
+
+	private static int wordStart( String line, int end ) {
+		int start = end;
+		while( start > 0 && (Character.isLetterOrDigit( line.charAt( start - 1 ) ) || line.charAt( start - 1 ) == '_') ) {
+			start--;
+		}
+		return start;
+	}
+
+	private static String key( String name ) {
+		return name.toLowerCase( Locale.ROOT );
+	}
+}
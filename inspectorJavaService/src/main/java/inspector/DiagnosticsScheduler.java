@@ -0,0 +1,171 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which versions of a document get inspected for diagnostics.
+ * Every version starts a timer of the debounce interval ("inspector.diagnostics.debounceMs") which replaces
+ * the pending timer of the document, so nothing waits on a thread meanwhile, and only the version whose timer
+ * expires is inspected. Its diagnostics are published if no newer version of the document arrived while it was inspected.
+ * This way a burst of changes results in a single inspection of the last version.
+ */
+final class DiagnosticsScheduler {
+	private static final long DEFAULT_DEBOUNCE_MILLIS = 250;
+
+	// the pending inspection of a document
+	private static final class Pending {
+		private final long version;
+		private ScheduledFuture< ? > timer;
+
+		private Pending( long version ) {
+			this.version = version;
+		}
+	}
+
+	private static final DiagnosticsScheduler INSTANCE =
+		new DiagnosticsScheduler( InspectorSettings.getLong( "inspector.diagnostics.debounceMs", DEFAULT_DEBOUNCE_MILLIS ) );
+
+	private final long debounceMillis;
+	private final Map< String, Long > latestVersions = new ConcurrentHashMap<>();
+	private final Map< String, Pending > pending = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor( runnable -> {
+		Thread thread = new Thread( runnable, "diagnostics-debounce" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	private final AtomicLong scheduled = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong published = new AtomicLong();
+
+	private DiagnosticsScheduler( long debounceMillis ) {
+		this.debounceMillis = Math.max( 0, debounceMillis );
+	}
+
+	static DiagnosticsScheduler instance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers a new version of the document and restarts the debounce interval of the document without blocking.
+	 * The pending inspection of an older version is dropped
+	 * @param uri the uri of the document
+	 * @param version the version of the document
+	 * @param inspection started from the timer thread when the interval expires, so it must hand the work over
+	 * instead of running the inspection itself
+	 */
+	void schedule( String uri, long version, Runnable inspection ) {
+		scheduled.incrementAndGet();
+		latestVersions.merge( uri, version, Math::max );
+		pending.compute( uri, ( key, previous ) -> {
+			if( previous != null && previous.version > version ) { // a late change, a newer version is pending
+				coalesced.incrementAndGet();
+				return previous;
+			}
+			if( previous != null && previous.timer.cancel( false ) ) {
+				coalesced.incrementAndGet();
+			}
+			Pending next = new Pending( version );
+			// the timer waits for this mapping, so it only runs if the version was neither replaced nor forgotten
+			next.timer = timers.schedule( () -> {
+				if( pending.remove( uri, next ) && isLatest( uri, version ) ) {
+					inspection.run();
+				}
+			}, debounceMillis, TimeUnit.MILLISECONDS );
+			return next;
+		} );
+	}
+
+	/**
+	 * @return true if no newer version than the given one has been registered for the document
+	 */
+	boolean isLatest( String uri, long version ) {
+		Long latest = latestVersions.get( uri );
+		return latest == null || latest <= version;
+	}
+
+	/**
+	 * Called by an inspection that stops early because its version became stale
+	 */
+	void inspectionCancelled() {
+		cancelled.incrementAndGet();
+	}
+
+	/**
+	 * Called when an inspection finished, to know if its diagnostics should be published
+	 * @return true if the diagnostics are for the latest version of the document
+	 */
+	boolean shouldPublish( String uri, long version ) {
+		if( isLatest( uri, version ) ) {
+			published.incrementAndGet();
+			return true;
+		}
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Forgets the versions of a closed document
+	 */
+	void forget( String uri ) {
+		Pending previous = pending.remove( uri );
+		if( previous != null ) {
+			previous.timer.cancel( false );
+		}
+		latestVersions.remove( uri );
+	}
+
+	long debounceMillis() {
+		return debounceMillis;
+	}
+
+	long scheduled() {
+		return scheduled.get();
+	}
+
+	long coalesced() {
+		return coalesced.get();
+	}
+
+	long cancelled() {
+		return cancelled.get();
+	}
+
+	long dropped() {
+		return dropped.get();
+	}
+
+	long published() {
+		return published.get();
+	}
+}
@@ -0,0 +1,212 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Listings of the directories used for completing module paths, e.g. the directories of the workspace and
+ * JOLIE_HOME/packages, kept in memory so that completing an import does not touch the file system on every keystroke.
+ * A listing is dropped as soon as the WatchService reports that an entry was created or deleted in the directory.
+ * Directories that cannot be watched are listed again after "inspector.directoryCache.unwatchedTtlMs".
+ * At most "inspector.directoryCache.maxDirectories" directories are kept, the least recently used are dropped first.
+ */
+final class DirectoryListingCache {
+	/**
+	 * A file or directory in a listing
+	 */
+	static final class Entry {
+		private final String name;
+		private final boolean directory;
+
+		private Entry( String name, boolean directory ) {
+			this.name = name;
+			this.directory = directory;
+		}
+
+		String name() {
+			return name;
+		}
+
+		boolean isDirectory() {
+			return directory;
+		}
+	}
+
+	private static final class Listing {
+		private final List< Entry > entries;
+		private final WatchKey key;
+		private final long expiresAt;
+
+		private Listing( List< Entry > entries, WatchKey key, long expiresAt ) {
+			this.entries = entries;
+			this.key = key;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isValid() {
+			return key != null ? key.isValid() : System.currentTimeMillis() < expiresAt;
+		}
+	}
+
+	private static final int MAX_DIRECTORIES =
+		Math.max( 1, InspectorSettings.getInt( "inspector.directoryCache.maxDirectories", 1024 ) );
+	private static final long UNWATCHED_TTL_MILLIS =
+		InspectorSettings.getLong( "inspector.directoryCache.unwatchedTtlMs", 2000 );
+
+	private static final DirectoryListingCache INSTANCE = new DirectoryListingCache();
+
+	private final Map< Path, Listing > listings = new LinkedHashMap< Path, Listing >( 16, 0.75f, true ) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry< Path, Listing > eldest ) {
+			if( size() > MAX_DIRECTORIES ) {
+				if( eldest.getValue().key != null ) {
+					eldest.getValue().key.cancel();
+				}
+				return true;
+			}
+			return false;
+		}
+	};
+	// how many times the watcher reported changes in each directory, guarded by listings,
+	// so a listing that raced with a change is not cached
+	private final Map< Path, Long > generations = new HashMap<>();
+	private WatchService watchService;
+	private boolean watchServiceUnavailable = false;
+
+	private DirectoryListingCache() {}
+
+	static DirectoryListingCache instance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param directory the directory to list
+	 * @return the entries of the directory ordered by name, or null if it is not a directory
+	 */
+	List< Entry > list( Path directory ) {
+		Path dir = directory.toAbsolutePath().normalize();
+		long generation;
+		synchronized( listings ) {
+			Listing listing = listings.get( dir );
+			if( listing != null && listing.isValid() ) {
+				return listing.entries;
+			}
+			generation = generations.getOrDefault( dir, 0L );
+		}
+		if( !Files.isDirectory( dir ) ) {
+			return null;
+		}
+		// the directory is watched before it is listed, so no change can be missed in between
+		WatchKey key = watch( dir );
+		List< Entry > entries = new ArrayList<>();
+		try( DirectoryStream< Path > stream = Files.newDirectoryStream( dir ) ) {
+			for( Path path : stream ) {
+				entries.add( new Entry( path.getFileName().toString(), Files.isDirectory( path ) ) );
+			}
+		} catch( IOException | DirectoryIteratorException e ) {
+			return null;
+		}
+		entries.sort( Comparator.comparing( Entry::name ) );
+		List< Entry > result = Collections.unmodifiableList( entries );
+		synchronized( listings ) {
+			// a change reported while listing might not be in the result, the next call lists the directory again
+			if( generations.getOrDefault( dir, 0L ) == generation ) {
+				listings.put( dir, new Listing( result, key, System.currentTimeMillis() + UNWATCHED_TTL_MILLIS ) );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Answered from the listing of the parent directory when possible
+	 * @param path a path that might be a directory
+	 * @return true if the path is a directory
+	 */
+	boolean isDirectory( Path path ) {
+		Path absolutePath = path.toAbsolutePath().normalize();
+		Path parent = absolutePath.getParent();
+		if( parent == null ) {
+			return Files.isDirectory( absolutePath );
+		}
+		List< Entry > siblings = list( parent );
+		if( siblings == null ) {
+			return false;
+		}
+		String name = absolutePath.getFileName().toString();
+		for( Entry entry : siblings ) {
+			if( entry.directory && entry.name.equals( name ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// returns null if the directory cannot be watched
+	private WatchKey watch( Path dir ) {
+		WatchService service = watchService();
+		if( service == null ) {
+			return null;
+		}
+		try {
+			return dir.register( service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE );
+		} catch( IOException | UnsupportedOperationException | ClosedWatchServiceException e ) {
+			return null;
+		}
+	}
+
+	private synchronized WatchService watchService() {
+		if( watchService == null && !watchServiceUnavailable ) {
+			try {
+				watchService = FileSystems.getDefault().newWatchService();
+				Thread watcher = new Thread( this::processEvents, "inspector-directory-watcher" );
+				watcher.setDaemon( true );
+				watcher.start();
+			} catch( IOException | UnsupportedOperationException e ) {
+				watchServiceUnavailable = true;
+			}
+		}
+		return watchService;
+	}
+
+	private void processEvents() {
+		while( true ) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch( InterruptedException | ClosedWatchServiceException e ) {
+				return;
+			}
+			key.pollEvents();
+			synchronized( listings ) {
+				listings.remove( (Path) key.watchable() );
+				generations.merge( (Path) key.watchable(), 1L, Long::sum );
+			}
+			key.reset();
+		}
+	}
+}
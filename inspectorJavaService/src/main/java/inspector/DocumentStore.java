@@ -0,0 +1,274 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jolie.runtime.FaultException;
+import jolie.runtime.JavaService;
+import jolie.runtime.Value;
+import jolie.runtime.embedding.RequestResponse;
+
+/**
+ * Registry of the open documents, keyed by their normalized uri.
+ * Every version of a document is an immutable snapshot which is swapped atomically on update,
+ * so readers always get a consistent text, version and program without taking any lock,
+ * and the services using the registry can run concurrently.
+ * The text is kept as a rope, so that the incremental changes sent by the client
+ * can be applied without copying or splitting the whole document on every keystroke.
+ * The versions of a document increase but might have gaps, so the changes are applied in the order they arrive,
+ * which the Utils service keeps, and only the changes of a version that is not newer than the stored one are ignored.
+ * The documents are shared between all the services embedding the store.
+ */
+public class DocumentStore extends JavaService {
+	private static final class Document {
+		private final String uri;
+		private final int version;
+		private final TextBuffer text;
+		// the program of the last inspection that succeeded, it might be for an older version of the text
+		private final Value jolieProgram;
+		private volatile String source;
+
+		private Document( String uri, int version, TextBuffer text, Value jolieProgram ) {
+			this.uri = uri;
+			this.version = version;
+			this.text = text;
+			this.jolieProgram = jolieProgram;
+		}
+
+		private String source() {
+			String result = source;
+			if( result == null ) {
+				result = text.toString();
+				source = result;
+			}
+			return result;
+		}
+	}
+
+	private static final Map< String, Document > DOCUMENTS = new ConcurrentHashMap<>();
+
+	/**
+	 * Stores the text of a document that was opened, replacing any previous text
+	 * @param request OpenDocumentRequest containing uri, text and version
+	 */
+	@RequestResponse
+	public void openDocument( Value request ) {
+		String uri = request.getFirstChild( "uri" ).strValue();
+		int version = request.hasChildren( "version" ) ? request.getFirstChild( "version" ).intValue() : 0;
+		DOCUMENTS.put( normalize( uri ),
+			new Document( uri, version, TextBuffer.of( request.getFirstChild( "text" ).strValue() ), null ) );
+	}
+
+	/**
+	 * Applies the content changes of a didChange notification, in order.
+	 * A change without a range replaces the whole text. Changes for a version that is not newer than the stored one are ignored.
+	 * The versions do not need to be consecutive, e.g. Neovim sends its change counter as the version
+	 * @param request DocumentChanges containing uri, version and the content changes
+	 * @return DocumentVersion containing the version of the document after the changes, and whether it changed
+	 * @throws FaultException DocumentNotFound if the document is not open
+	 */
+	@RequestResponse
+	public Value applyChanges( Value request ) throws FaultException {
+		return Metrics.time( "applyChanges", () -> doApplyChanges( request ) );
+	}
+
+	private Value doApplyChanges( Value request ) throws FaultException {
+		String uri = request.getFirstChild( "uri" ).strValue();
+		int version = request.getFirstChild( "version" ).intValue();
+		boolean[] updated = { false };
+		Document document = DOCUMENTS.computeIfPresent( normalize( uri ), ( key, current ) -> {
+			if( current.version >= version ) {
+				return current;
+			}
+			updated[ 0 ] = true;
+			// the program of the previous version is kept until the new version has been inspected
+			return new Document( current.uri, version, applyChanges( current.text, request ), current.jolieProgram );
+		} );
+		if( document == null ) {
+			throw new FaultException( "DocumentNotFound", uri );
+		}
+		Value result = Value.create();
+		result.setFirstChild( "version", document.version );
+		result.setFirstChild( "updated", updated[ 0 ] );
+		return result;
+	}
+
+	/**
+	 * @param text the text of the previous version
+	 * @param changes DocumentChanges of the next version
+	 * @return the text of the next version
+	 */
+	private static TextBuffer applyChanges( TextBuffer text, Value changes ) {
+		for( Value change : changes.getChildren( "changes" ) ) {
+			String newText = change.getFirstChild( "text" ).strValue();
+			if( change.hasChildren( "range" ) ) {
+				Value start = change.getFirstChild( "range" ).getFirstChild( "start" );
+				Value end = change.getFirstChild( "range" ).getFirstChild( "end" );
+				text = text.replace(
+					text.offsetAt( start.getFirstChild( "line" ).intValue(), start.getFirstChild( "character" ).intValue() ),
+					text.offsetAt( end.getFirstChild( "line" ).intValue(), end.getFirstChild( "character" ).intValue() ),
+					newText );
+			} else {
+				text = TextBuffer.of( newText );
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * Stores the program found by inspecting a version of a document,
+	 * it is ignored if the document changed since that version
+	 * @param request JolieProgramUpdate containing uri, version and jolieProgram
+	 */
+	@RequestResponse
+	public void updateJolieProgram( Value request ) {
+		int version = request.getFirstChild( "version" ).intValue();
+		Value jolieProgram = Value.createDeepCopy( request.getFirstChild( "jolieProgram" ) );
+		DOCUMENTS.computeIfPresent( normalize( request.getFirstChild( "uri" ).strValue() ),
+			( key, current ) -> current.version == version
+				? new Document( current.uri, current.version, current.text, jolieProgram )
+				: current );
+	}
+
+	/**
+	 * The returned program is shared with the snapshot, so it must not be modified
+	 * @param uri the uri of the document
+	 * @return TextDocument containing the uri, source, version and jolieProgram of the latest version,
+	 * void if the document is not open
+	 */
+	@RequestResponse
+	public Value getDocument( Value uri ) {
+		Document document = DOCUMENTS.get( normalize( uri.strValue() ) );
+		if( document == null ) {
+			return Value.create();
+		}
+		Value result = Value.create();
+		result.setFirstChild( "uri", document.uri );
+		result.setFirstChild( "source", document.source() );
+		result.setFirstChild( "version", document.version );
+		if( document.jolieProgram != null ) {
+			result.getChildren( "jolieProgram" ).add( document.jolieProgram );
+		}
+		return result;
+	}
+
+	/**
+	 * @param request LineRequest containing uri and line
+	 * @return the text of the line without its newline, void if the document or the line does not exist
+	 */
+	@RequestResponse
+	public Value getLine( Value request ) {
+		Document document = DOCUMENTS.get( normalize( request.getFirstChild( "uri" ).strValue() ) );
+		if( document != null ) {
+			String line = document.text.line( request.getFirstChild( "line" ).intValue() );
+			if( line != null ) {
+				return Value.create( line );
+			}
+		}
+		return Value.create();
+	}
+
+	/**
+	 * @param uri the uri of the document
+	 * @return the whole text of the document, void if the document is not open
+	 */
+	@RequestResponse
+	public Value getText( Value uri ) {
+		Document document = DOCUMENTS.get( normalize( uri.strValue() ) );
+		return document == null ? Value.create() : Value.create( document.source() );
+	}
+
+	/**
+	 * @param uri the uri of the document
+	 * @return DocumentText containing the whole text of the latest version and the version, void if the document is not open
+	 */
+	@RequestResponse
+	public Value getVersionedText( Value uri ) {
+		Document document = DOCUMENTS.get( normalize( uri.strValue() ) );
+		if( document == null ) {
+			return Value.create();
+		}
+		Value result = Value.create();
+		result.setFirstChild( "text", document.source() );
+		result.setFirstChild( "version", document.version );
+		return result;
+	}
+
+	/**
+	 * Forgets a document that was closed
+	 * @param uri the uri of the document
+	 */
+	public void closeDocument( Value uri ) {
+		DOCUMENTS.remove( normalize( uri.strValue() ) );
+	}
+
+	/**
+	 * Used by the inspector, which runs in the same JVM, to see the unsaved text of the open modules
+	 * @return the current text of every open document that is a file, by file
+	 */
+	static Map< File, String > openSources() {
+		Map< File, String > result = new HashMap<>();
+		for( Document document : DOCUMENTS.values() ) {
+			try {
+				URI uri = new URI( normalize( document.uri ) );
+				if( "file".equals( uri.getScheme() ) ) {
+					result.put( new File( uri ), document.source() );
+				}
+			} catch( URISyntaxException | IllegalArgumentException e ) {
+				// not a file the inspector could read either
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Clients do not always spell the same uri the same way, e.g. "file:///C%3A/a/../b.ol" and "file:///c:/b.ol",
+	 * so the scheme and drive letter are lower cased, escapes are decoded and the path is normalized
+	 * @param uri the uri sent by the client
+	 * @return the key of the document in the registry
+	 */
+	static String normalize( String uri ) {
+		try {
+			URI parsed = new URI( uri.replace( " ", "%20" ) ).normalize();
+			if( parsed.isOpaque() || parsed.getScheme() == null ) {
+				return uri;
+			}
+			String path = parsed.getPath();
+			if( path != null && path.length() >= 3 && path.charAt( 0 ) == '/' && path.charAt( 2 ) == ':'
+				&& Character.isLetter( path.charAt( 1 ) ) ) {
+				path = "/" + Character.toLowerCase( path.charAt( 1 ) ) + path.substring( 2 );
+			}
+			return new URI( parsed.getScheme().toLowerCase( Locale.ROOT ), parsed.getAuthority(), path,
+				parsed.getQuery(), parsed.getFragment() ).toString();
+		} catch( URISyntaxException e ) {
+			return uri;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.lang.parse.ast.InputPortInfo;
+import jolie.lang.parse.ast.InterfaceDefinition;
+import jolie.lang.parse.ast.OLSyntaxNode;
+import jolie.lang.parse.ast.OperationDeclaration;
+import jolie.lang.parse.ast.OutputPortInfo;
+import jolie.lang.parse.ast.PortInfo;
+import jolie.lang.parse.ast.RequestResponseOperationDeclaration;
+import jolie.lang.parse.ast.types.TypeDefinition;
+import jolie.lang.parse.context.ParsingContext;
+import jolie.lang.parse.util.ProgramInspector;
+import jolie.runtime.Value;
+import jolie.runtime.ValueVector;
+
+import java.net.URI;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * Builds the outline of a module as the DocumentSymbols of the LSP: the services with their ports,
+ * the interfaces with their operations, and the types.
+ * The ports, interfaces and types come from the parsed program of the module, and the services, which the
+ * ProgramInspector does not describe, from their declarations in the source, spanning up to their closing brace.
+ * The outline of the latest version of every document is kept, so asking again for the same version, as editors
+ * do for the breadcrumbs whenever the cursor moves, returns the same Value without looking at the program.
+ * Responses contain the kept Value itself, so they must be treated as read only.
+ */
+final class DocumentSymbols {
+	private static final int KIND_CLASS = 5;
+	private static final int KIND_METHOD = 6;
+	private static final int KIND_INTERFACE = 11;
+	private static final int KIND_VARIABLE = 13;
+	private static final int KIND_STRUCT = 23;
+
+	// the documents open in an editor, the least recently used outlines are dropped beyond this
+	private static final int MAX_DOCUMENTS = 64;
+
+	private static final class Latest {
+		private final String source;
+		private final Value symbols;
+
+		private Latest( String source, Value symbols ) {
+			this.source = source;
+			this.symbols = symbols;
+		}
+	}
+
+	private static final Map< String, Latest > LATEST = new LinkedHashMap<>( 16, 0.75f, true ) {
+		@Override
+		protected boolean removeEldestEntry( Map.Entry< String, Latest > eldest ) {
+			return size() > MAX_DOCUMENTS;
+		}
+	};
+
+	/**
+	 * A symbol of the outline, with zero based positions
+	 */
+	private static final class Node {
+		private final String name;
+		private final String detail;
+		private final int kind;
+		private final int startLine;
+		private final int startCharacter;
+		private int endLine;
+		private int endCharacter;
+		private int selectionLine;
+		private int selectionStart;
+		private int selectionEnd;
+		private final List< Node > children = new ArrayList<>();
+
+		private Node( String name, String detail, int kind, int startLine, int startCharacter, int endLine,
+			int endCharacter ) {
+			this.name = name;
+			this.detail = detail;
+			this.kind = kind;
+			this.startLine = startLine;
+			this.startCharacter = startCharacter;
+			this.endLine = endLine;
+			this.endCharacter = endCharacter;
+		}
+
+		private boolean contains( Node other ) {
+			return compare( startLine, startCharacter, other.startLine, other.startCharacter ) <= 0
+				&& compare( other.startLine, other.startCharacter, endLine, endCharacter ) <= 0;
+		}
+
+		private void extendTo( int line, int character ) {
+			if( compare( endLine, endCharacter, line, character ) < 0 ) {
+				endLine = line;
+				endCharacter = character;
+			}
+		}
+	}
+
+	private static final Comparator< Node > BY_POSITION =
+		( a, b ) -> compare( a.startLine, a.startCharacter, b.startLine, b.startCharacter );
+
+	private DocumentSymbols() {}
+
+	/**
+	 * @param uri the document
+	 * @param source the version of the document
+	 * @param builder builds the outline if the version is not the latest one of the document, it is given the
+	 * outline of the previous version (null if there is none) to fall back to if the version does not compile
+	 * @return the outline of the version
+	 */
+	static Value of( String uri, String source, UnaryOperator< Value > builder ) {
+		Latest previous;
+		synchronized( LATEST ) {
+			previous = LATEST.get( uri );
+		}
+		if( previous != null && previous.source.equals( source ) ) {
+			return previous.symbols;
+		}
+		Value symbols = builder.apply( previous == null ? null : previous.symbols );
+		synchronized( LATEST ) {
+			LATEST.put( uri, new Latest( source, symbols ) );
+		}
+		return symbols;
+	}
+
+	/**
+	 * Drops the outline of a document, e.g. when it is closed
+	 */
+	static void forget( String uri ) {
+		synchronized( LATEST ) {
+			LATEST.remove( uri );
+		}
+	}
+
+	/**
+	 * @param program the parsed module, including its imports
+	 * @param uri the uri the module was parsed with, only the symbols declared in it are part of the outline
+	 * @param source the source the module was parsed from
+	 * @return the DocumentSymbols of the module, in the "_" children
+	 */
+	static Value build( ProgramInspector program, URI uri, String source ) {
+		LineIndex lines = LineIndex.of( source );
+		List< Node > services = new ArrayList<>();
+		IdentifierLexer.symbols( source, token -> {
+			if( "service".equals( token.declarationKeyword() ) ) {
+				int end = closingBrace( source, lines.lineStart( token.line() ) + token.endCharacter() );
+				int endLine = lines.lineOf( end );
+				Node service = new Node( token.text(), "service", KIND_CLASS, token.line(), token.startCharacter(),
+					endLine, end - lines.lineStart( endLine ) );
+				service.selectionLine = token.line();
+				service.selectionStart = token.startCharacter();
+				service.selectionEnd = token.endCharacter();
+				services.add( service );
+			}
+		} );
+
+		List< Node > roots = new ArrayList<>( services );
+		for( InputPortInfo port : program.getInputPorts( uri ) ) {
+			addPort( roots, services, node( lines, port.id(), "inputPort", KIND_VARIABLE, port ) );
+		}
+		for( OutputPortInfo port : program.getOutputPorts( uri ) ) {
+			addPort( roots, services, node( lines, port.id(), "outputPort", KIND_VARIABLE, port ) );
+		}
+		for( InterfaceDefinition iface : program.getInterfaces( uri ) ) {
+			Node node = node( lines, iface.name(), "interface", KIND_INTERFACE, iface );
+			for( OperationDeclaration operation : iface.operationsMap().values() ) {
+				if( operation.context() != null ) {
+					Node child = node( lines, operation.id(),
+						operation instanceof RequestResponseOperationDeclaration ? "RequestResponse" : "OneWay",
+						KIND_METHOD, operation );
+					node.extendTo( child.endLine, child.endCharacter );
+					node.children.add( child );
+				}
+			}
+			roots.add( node );
+		}
+		for( TypeDefinition type : program.getTypes( uri ) ) {
+			roots.add( node( lines, type.name(), "type", KIND_STRUCT, type ) );
+		}
+
+		Value result = Value.create();
+		addAll( result, roots );
+		return result;
+	}
+
+	private static void addPort( List< Node > roots, List< Node > services, Node port ) {
+		for( Node service : services ) {
+			if( service.contains( port ) ) {
+				service.children.add( port );
+				return;
+			}
+		}
+		// a module written before services were introduced declares its ports at the top level
+		roots.add( port );
+	}
+
+	private static Node node( LineIndex lines, String name, String detail, int kind, OLSyntaxNode syntaxNode ) {
+		ParsingContext context = syntaxNode.context();
+		int line = Math.max( 0, Math.min( context.startLine(), lines.lineCount() - 1 ) );
+		int character = Math.max( 0, context.startColumn() );
+		Node node = new Node( name, detail, kind, line, character, line, character );
+		node.extendTo( context.endLine(), context.endColumn() );
+		// the name is usually right after the keyword on the first line, otherwise the start of the node is selected
+		int lineStart = lines.lineStart( line );
+		int nameStart = lines.source().substring( Math.min( lineStart + character, lines.lineEnd( line ) ),
+			lines.lineEnd( line ) ).indexOf( name );
+		node.selectionLine = line;
+		node.selectionStart = nameStart < 0 ? character : character + nameStart;
+		node.selectionEnd = node.selectionStart + name.length();
+		node.extendTo( line, node.selectionEnd );
+		return node;
+	}
+
+	private static void addAll( Value parent, List< Node > nodes ) {
+		nodes.sort( BY_POSITION );
+		ValueVector symbols = parent.getChildren( "_" );
+		for( Node node : nodes ) {
+			Value symbol = Value.create();
+			symbol.setFirstChild( "name", node.name );
+			symbol.setFirstChild( "detail", node.detail );
+			symbol.setFirstChild( "kind", node.kind );
+			setRange( symbol.getFirstChild( "range" ), node.startLine, node.startCharacter, node.endLine,
+				node.endCharacter );
+			setRange( symbol.getFirstChild( "selectionRange" ), node.selectionLine, node.selectionStart,
+				node.selectionLine, node.selectionEnd );
+			if( !node.children.isEmpty() ) {
+				addAll( symbol.getFirstChild( "children" ), node.children );
+			}
+			symbols.add( symbol );
+		}
+	}
+
+	private static void setRange( Value range, int startLine, int startCharacter, int endLine, int endCharacter ) {
+		range.getFirstChild( "start" ).setFirstChild( "line", startLine );
+		range.getFirstChild( "start" ).setFirstChild( "character", startCharacter );
+		range.getFirstChild( "end" ).setFirstChild( "line", endLine );
+		range.getFirstChild( "end" ).setFirstChild( "character", endCharacter );
+	}
+
+	/**
+	 * @param source a whole source
+	 * @param from an offset before the opening brace of a block
+	 * @return the offset after the brace closing the block, or the end of the source if it is not closed,
+	 * skipping the braces in comments and strings
+	 */
+	private static int closingBrace( String source, int from ) {
+		int depth = 0;
+		int i = from;
+		int length = source.length();
+		while( i < length ) {
+			char c = source.charAt( i );
+			if( c == '/' && i + 1 < length && source.charAt( i + 1 ) == '/' ) {
+				while( i < length && source.charAt( i ) != '\n' ) {
+					i++;
+				}
+			} else if( c == '/' && i + 1 < length && source.charAt( i + 1 ) == '*' ) {
+				int end = source.indexOf( "*/", i + 2 );
+				i = end < 0 ? length : end + 2;
+			} else if( c == '"' ) {
+				i++;
+				while( i < length && source.charAt( i ) != '"' ) {
+					i += source.charAt( i ) == '\\' ? 2 : 1;
+				}
+				i++;
+			} else {
+				if( c == '{' ) {
+					depth++;
+				} else if( c == '}' && --depth == 0 ) {
+					return i + 1;
+				}
+				i++;
+			}
+		}
+		return length;
+	}
+
+	private static int compare( int lineA, int characterA, int lineB, int characterB ) {
+		return lineA != lineB ? Integer.compare( lineA, lineB ) : Integer.compare( characterA, characterB );
+	}
+}
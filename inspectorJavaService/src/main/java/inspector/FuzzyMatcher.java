@@ -0,0 +1,123 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+/**
+ * Scores how well a query matches a symbol name, the way editors match file and symbol names:
+ * the characters of the query have to appear in the name in the same order, ignoring case,
+ * and matches at the start of the name, at the start of a camel case or snake case word, and runs of
+ * consecutive characters score higher, while gaps between the matched characters score lower.
+ * E.g. "RR", "reqres" and "ReqRes" all match "RequestResponse".
+ */
+final class FuzzyMatcher {
+	/**
+	 * The score of a name that does not match the query
+	 */
+	static final int NO_MATCH = Integer.MIN_VALUE;
+
+	private static final int MATCH = 16;
+	private static final int START_BONUS = 12;
+	private static final int WORD_BONUS = 10;
+	private static final int CONSECUTIVE_BONUS = 8;
+	private static final int CASE_BONUS = 1;
+	private static final int EXACT_BONUS = 32;
+	private static final int GAP_START = 3;
+	private static final int GAP_EXTEND = 1;
+	private static final int LENGTH_PENALTY_DIVISOR = 4;
+
+	private FuzzyMatcher() {}
+
+	/**
+	 * @param query what the user typed, the empty query matches every name with score 0
+	 * @param name the name of a symbol
+	 * @return the score of the best way to match the query in the name, higher is better, or NO_MATCH
+	 */
+	static int score( String query, String name ) {
+		int m = query.length();
+		int n = name.length();
+		if( m == 0 ) {
+			return 0;
+		}
+		if( m > n ) {
+			return NO_MATCH;
+		}
+		// best[j]: the best score of matching the query so far with its last character at name[j]
+		int[] previous = new int[ n ];
+		int[] best = new int[ n ];
+		for( int j = 0; j < n; j++ ) {
+			best[ j ] = matchScore( query.charAt( 0 ), name, j );
+		}
+		for( int i = 1; i < m; i++ ) {
+			int[] swap = previous;
+			previous = best;
+			best = swap;
+			char c = query.charAt( i );
+			// the best score of the previous character followed by a gap before j
+			int gapped = NO_MATCH;
+			for( int j = 0; j < n; j++ ) {
+				if( gapped != NO_MATCH ) {
+					gapped -= GAP_EXTEND;
+				}
+				if( j >= 2 && previous[ j - 2 ] != NO_MATCH ) {
+					gapped = Math.max( gapped, previous[ j - 2 ] - GAP_START );
+				}
+				int score = NO_MATCH;
+				int match = j >= i ? matchScore( c, name, j ) : NO_MATCH;
+				if( match != NO_MATCH ) {
+					int before = j >= 1 && previous[ j - 1 ] != NO_MATCH ? previous[ j - 1 ] + CONSECUTIVE_BONUS : NO_MATCH;
+					before = Math.max( before, gapped );
+					if( before != NO_MATCH ) {
+						score = before + match;
+					}
+				}
+				best[ j ] = score;
+			}
+		}
+		int result = NO_MATCH;
+		for( int j = m - 1; j < n; j++ ) {
+			result = Math.max( result, best[ j ] );
+		}
+		if( result == NO_MATCH ) {
+			return NO_MATCH;
+		}
+		// among equally good matches the shorter names are closer to what the user typed
+		result -= (n - m) / LENGTH_PENALTY_DIVISOR;
+		return m == n && query.equalsIgnoreCase( name ) ? result + EXACT_BONUS : result;
+	}
+
+	private static int matchScore( char c, String name, int j ) {
+		char candidate = name.charAt( j );
+		if( Character.toLowerCase( c ) != Character.toLowerCase( candidate ) ) {
+			return NO_MATCH;
+		}
+		int score = MATCH + (c == candidate ? CASE_BONUS : 0);
+		if( j == 0 ) {
+			return score + START_BONUS;
+		}
+		char before = name.charAt( j - 1 );
+		boolean wordStart = !Character.isLetterOrDigit( before )
+			|| (Character.isUpperCase( candidate ) && Character.isLowerCase( before ))
+			|| (Character.isDigit( candidate ) && !Character.isDigit( before ));
+		return wordStart ? score + WORD_BONUS : score;
+	}
+}
@@ -0,0 +1,289 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Finds the identifier at a position of a source, by scanning the characters around the position
+ * in the line given by a LineIndex, and the places where symbols are used in a whole source
+ */
+final class IdentifierLexer {
+	/**
+	 * An identifier and where it is in the source
+	 */
+	static final class Token {
+		private final String text;
+		private final int line;
+		private final int startCharacter;
+		private final int endCharacter;
+		private final String declarationKeyword;
+
+		private Token( String text, int line, int startCharacter, int endCharacter ) {
+			this( text, line, startCharacter, endCharacter, null );
+		}
+
+		private Token( String text, int line, int startCharacter, int endCharacter, String declarationKeyword ) {
+			this.text = text;
+			this.line = line;
+			this.startCharacter = startCharacter;
+			this.endCharacter = endCharacter;
+			this.declarationKeyword = declarationKeyword;
+		}
+
+		String text() {
+			return text;
+		}
+
+		int line() {
+			return line;
+		}
+
+		int startCharacter() {
+			return startCharacter;
+		}
+
+		int endCharacter() {
+			return endCharacter;
+		}
+
+		/**
+		 * @return true if the token is the name of a type, interface, service or port in its declaration
+		 */
+		boolean isDeclaration() {
+			return declarationKeyword != null;
+		}
+
+		/**
+		 * @return the keyword declaring the token, e.g. "type" or "inputPort", or null if it is not a declaration
+		 */
+		String declarationKeyword() {
+			return declarationKeyword;
+		}
+	}
+
+	private IdentifierLexer() {}
+
+	/**
+	 * The identifier under the position is returned, or otherwise the one ending just before it,
+	 * ignoring whitespace, as the cursor is often right after the word the user typed
+	 * @param index the line index of the source
+	 * @param line a zero based line number
+	 * @param character a zero based character in the line
+	 * @return the identifier at the position, or null if there is none
+	 */
+	static Token tokenAt( LineIndex index, int line, int character ) {
+		if( line < 0 || line >= index.lineCount() ) {
+			return null;
+		}
+		String source = index.source();
+		int start = index.lineStart( line );
+		int end = index.lineEnd( line );
+		int position = start + Math.max( 0, Math.min( character, end - start ) );
+		if( position >= end || !isIdentifierPart( source.charAt( position ) ) ) {
+			position--;
+			while( position >= start && Character.isWhitespace( source.charAt( position ) ) ) {
+				position--;
+			}
+			if( position < start || !isIdentifierPart( source.charAt( position ) ) ) {
+				return null;
+			}
+		}
+		int tokenStart = position;
+		while( tokenStart > start && isIdentifierPart( source.charAt( tokenStart - 1 ) ) ) {
+			tokenStart--;
+		}
+		int tokenEnd = position + 1;
+		while( tokenEnd < end && isIdentifierPart( source.charAt( tokenEnd ) ) ) {
+			tokenEnd++;
+		}
+		return new Token( source.substring( tokenStart, tokenEnd ), line, tokenStart - start, tokenEnd - start );
+	}
+
+	/**
+	 * The operation of the call whose parentheses contain the position, on the line of the position,
+	 * e.g. while the request of op@Port( ... ) or of [ op( ... ) ] is typed
+	 * @param index the line index of the source
+	 * @param line a zero based line number
+	 * @param character a zero based character in the line
+	 * @return the identifier before the innermost parenthesis that is open at the position, or null if there is none
+	 */
+	static Token callAt( LineIndex index, int line, int character ) {
+		if( line < 0 || line >= index.lineCount() ) {
+			return null;
+		}
+		String source = index.source();
+		int start = index.lineStart( line );
+		int depth = 0;
+		for( int i = start + Math.max( 0, Math.min( character, index.lineEnd( line ) - start ) ) - 1; i >= start; i-- ) {
+			char c = source.charAt( i );
+			if( c == ')' ) {
+				depth++;
+			} else if( c == '(' && depth-- == 0 ) {
+				return tokenAt( index, line, i - start );
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param index the line index of the source
+	 * @param operation an identifier of the source
+	 * @return the port if the identifier is the operation of a call op@Port, null otherwise
+	 */
+	static Token calledPort( LineIndex index, Token operation ) {
+		String source = index.source();
+		int at = index.lineStart( operation.line() ) + operation.endCharacter();
+		if( at + 1 < index.lineEnd( operation.line() ) && source.charAt( at ) == '@'
+			&& isIdentifierPart( source.charAt( at + 1 ) ) ) {
+			return tokenAt( index, operation.line(), operation.endCharacter() + 1 );
+		}
+		return null;
+	}
+
+	/**
+	 * @param index the line index of the source
+	 * @param port an identifier of the source
+	 * @return the operation if the identifier is the port of a call op@Port, null otherwise
+	 */
+	static Token callingOperation( LineIndex index, Token port ) {
+		String source = index.source();
+		int at = index.lineStart( port.line() ) + port.startCharacter() - 1;
+		if( port.startCharacter() >= 2 && source.charAt( at ) == '@' && isIdentifierPart( source.charAt( at - 1 ) ) ) {
+			return tokenAt( index, port.line(), port.startCharacter() - 2 );
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the places where the given names are used as symbols in a source: imports, declarations, operation
+	 * signatures, types of fields, interfaces of ports and so on, see symbols
+	 * @param source a whole source
+	 * @param names the names of the symbols of the module
+	 * @return the occurrences of the names, in the order they appear in the source
+	 */
+	static List< Token > references( String source, Set< String > names ) {
+		List< Token > tokens = new ArrayList<>();
+		if( !names.isEmpty() ) {
+			symbols( source, token -> {
+				if( names.contains( token.text() ) ) {
+					tokens.add( token );
+				}
+			} );
+		}
+		return tokens;
+	}
+
+	/**
+	 * Finds the identifiers of a source that can refer to a symbol.
+	 * Comments and strings are skipped, and so are the names of fields (a name followed by ?, * or [, or by :
+	 * when it is not declared as a type), parts of paths (a name after a dot) and the module of an import,
+	 * as they do not refer to a symbol even if they have the same name
+	 * @param source a whole source
+	 * @param consumer receives the identifiers in the order they appear in the source
+	 */
+	static void symbols( String source, Consumer< Token > consumer ) {
+		int length = source.length();
+		int line = 0;
+		int lineStart = 0;
+		String previousWord = "";
+		int i = 0;
+		while( i < length ) {
+			char c = source.charAt( i );
+			if( c == '\n' ) {
+				line++;
+				lineStart = ++i;
+			} else if( c == '/' && i + 1 < length && source.charAt( i + 1 ) == '/' ) {
+				while( i < length && source.charAt( i ) != '\n' ) {
+					i++;
+				}
+			} else if( c == '/' && i + 1 < length && source.charAt( i + 1 ) == '*' ) {
+				i += 2;
+				while( i < length && !(source.charAt( i ) == '*' && i + 1 < length && source.charAt( i + 1 ) == '/') ) {
+					if( source.charAt( i ) == '\n' ) {
+						line++;
+						lineStart = i + 1;
+					}
+					i++;
+				}
+				i += 2;
+			} else if( c == '"' ) {
+				i++;
+				while( i < length && source.charAt( i ) != '"' ) {
+					if( source.charAt( i ) == '\\' ) {
+						i++;
+					}
+					if( i < length && source.charAt( i ) == '\n' ) {
+						line++;
+						lineStart = i + 1;
+					}
+					i++;
+				}
+				i++;
+			} else if( isIdentifierPart( c ) ) {
+				int start = i;
+				while( i < length && isIdentifierPart( source.charAt( i ) ) ) {
+					i++;
+				}
+				String word = source.substring( start, i );
+				boolean declaration = isDeclarationKeyword( previousWord );
+				if( !isPathPart( source, start, previousWord ) && (declaration || !isFieldName( source, i )) ) {
+					consumer.accept( new Token( word, line, start - lineStart, i - lineStart,
+						declaration ? previousWord : null ) );
+				}
+				previousWord = word;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	private static boolean isDeclarationKeyword( String word ) {
+		return word.equals( "type" ) || word.equals( "interface" ) || word.equals( "service" )
+			|| word.equals( "inputPort" ) || word.equals( "outputPort" );
+	}
+
+	private static boolean isPathPart( String source, int start, String previousWord ) {
+		return (start > 0 && source.charAt( start - 1 ) == '.') || previousWord.equals( "from" );
+	}
+
+	private static boolean isFieldName( String source, int end ) {
+		int i = end;
+		while( i < source.length() && (source.charAt( i ) == ' ' || source.charAt( i ) == '\t') ) {
+			i++;
+		}
+		if( i >= source.length() ) {
+			return false;
+		}
+		char next = source.charAt( i );
+		return next == ':' || next == '?' || next == '*' || next == '[';
+	}
+
+	// the characters of Jolie identifiers, the same as \w in a regex
+	private static boolean isIdentifierPart( char c ) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+}
@@ -0,0 +1,316 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.Interpreter;
+import jolie.cli.CommandLineException;
+import jolie.cli.CommandLineParser;
+import jolie.lang.CodeCheckException;
+import jolie.lang.CodeCheckMessage;
+import jolie.lang.parse.Scanner;
+import jolie.lang.parse.SemanticVerifier;
+import jolie.lang.parse.ast.Program;
+import jolie.lang.parse.util.ParsingUtils;
+import jolie.lang.parse.util.ProgramInspector;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * The result of inspecting one version of a module, shared by all the operations of the Inspector through the ParseCache.
+ * It holds the ProgramInspector view used for diagnostics and the symbol tables of the SemanticVerifier used for
+ * definition, hover, rename and the symbol indexes, together with the CodeCheckMessages of a view that does not compile.
+ * The view that is asked for first is computed when the result is created, the other one the first time it is needed,
+ * so each view is computed at most once for every version of the module.
+ */
+final class InspectionResult {
+	enum View {
+		PROGRAM, MODULES
+	}
+
+	private final URI uri;
+	private final String source;
+	private final String[] includePaths;
+	private final String[] packagePaths;
+
+	private final ValueFragments fragments = new ValueFragments();
+
+	private final Object programLock = new Object();
+	private final Object modulesLock = new Object();
+	private volatile ProgramInspector program;
+	private CodeCheckException programFailure;
+	private volatile SemanticVerifier modules;
+	private CodeCheckException modulesFailure;
+	private volatile OperationSignatures signatures;
+
+	private InspectionResult( URI uri, String source, String[] includePaths, String[] packagePaths ) {
+		this.uri = uri;
+		this.source = source;
+		this.includePaths = includePaths;
+		this.packagePaths = packagePaths;
+	}
+
+	/**
+	 * Returns the inspection of the given version of a module, the module is only parsed again
+	 * if the source or one of the modules it imports changed
+	 * @param filename the path of the module
+	 * @param source the source of the module, the file is read if it is missing
+	 * @param includePaths
+	 * @param interpreter the interpreter of the service, which gives the package paths
+	 * @param view the view the caller needs, it is computed right away
+	 * @return the inspection of the module
+	 * @throws CommandLineException
+	 * @throws IOException
+	 * @throws CodeCheckException if the requested view does not compile
+	 */
+	static InspectionResult of( String filename, Optional< String > source, String[] includePaths,
+		Interpreter interpreter, View view )
+		throws CommandLineException, IOException, CodeCheckException {
+		final String sourceCode = source.isPresent() ? source.get() : Metrics.readString( Paths.get( filename ) );
+		final URI uri = new File( filename ).getAbsoluteFile().toURI();
+		InspectionResult result = ParseCache.instance().get( ParseCache.Kind.INSPECTION, uri, includePaths, sourceCode,
+			InspectionResult::sources,
+			() -> {
+				InspectionResult inspection = new InspectionResult( new File( filename ).toURI(), sourceCode,
+					includePaths, interpreter.configuration().packagePaths() );
+				inspection.compute( view );
+				return inspection;
+			} );
+		// a cached result might have been created for the other view
+		result.compute( view );
+		return result;
+	}
+
+	/**
+	 * @return the ProgramInspector view of the module
+	 * @throws CodeCheckException if the module does not compile
+	 */
+	ProgramInspector program() throws CommandLineException, IOException, CodeCheckException {
+		synchronized( programLock ) {
+			if( program == null ) {
+				if( programFailure != null ) {
+					throw programFailure;
+				}
+				long start = System.nanoTime();
+				try {
+					Program parsed = ParsingUtils.parseProgram(
+						new ByteArrayInputStream( source.getBytes() ),
+						uri,
+						ParserConfiguration.get().charset,
+						includePaths,
+						packagePaths,
+						ParserConfiguration.get().classLoader,
+						ParserConfiguration.get().constants,
+						ParserConfiguration.get().semanticConfiguration(),
+						true );
+					program = ParsingUtils.createInspector( parsed );
+				} catch( CodeCheckException e ) {
+					recordFailureOfSecondView( e, View.PROGRAM );
+					throw e;
+				} finally {
+					Metrics.instance().parsed( uri, "program", start );
+				}
+			}
+			return program;
+		}
+	}
+
+	/**
+	 * @return the SemanticVerifier of the module, containing the symbol tables of the module and of its imports
+	 * @throws CodeCheckException if the module does not compile
+	 */
+	SemanticVerifier modules() throws CommandLineException, IOException, CodeCheckException {
+		synchronized( modulesLock ) {
+			if( modules == null ) {
+				if( modulesFailure != null ) {
+					throw modulesFailure;
+				}
+				long start = System.nanoTime();
+				try {
+					modules = ParsingUtils.parseProgramModule(
+						new ByteArrayInputStream( source.getBytes() ),
+						uri,
+						ParserConfiguration.get().charset,
+						includePaths,
+						packagePaths,
+						ParserConfiguration.get().classLoader,
+						ParserConfiguration.get().constants,
+						ParserConfiguration.get().semanticConfiguration(),
+						true );
+				} catch( CodeCheckException e ) {
+					recordFailureOfSecondView( e, View.MODULES );
+					throw e;
+				} finally {
+					Metrics.instance().parsed( uri, "modules", start );
+				}
+			}
+			return modules;
+		}
+	}
+
+	/**
+	 * @return the signatures of the operations of the ports of the module, built from the ProgramInspector view
+	 * the first time they are needed
+	 * @throws CodeCheckException if the module does not compile
+	 */
+	OperationSignatures signatures() throws CommandLineException, IOException, CodeCheckException {
+		OperationSignatures current = signatures;
+		if( current == null ) {
+			// building the index twice in a race is harmless, both are the same
+			current = OperationSignatures.of( program() );
+			signatures = current;
+		}
+		return current;
+	}
+
+	/**
+	 * @return the uri the module is parsed with, which is the source of the nodes declared in the module
+	 */
+	URI uri() {
+		return uri;
+	}
+
+	/**
+	 * @return the Values describing the types and interfaces of this version of the module
+	 */
+	ValueFragments fragments() {
+		return fragments;
+	}
+
+	/**
+	 * @return the messages of the views that did not compile, empty if every computed view compiled
+	 */
+	List< CodeCheckMessage > messages() {
+		List< CodeCheckMessage > messages = new ArrayList<>();
+		synchronized( programLock ) {
+			if( programFailure != null ) {
+				messages.addAll( programFailure.messages() );
+			}
+		}
+		synchronized( modulesLock ) {
+			if( modulesFailure != null ) {
+				messages.addAll( modulesFailure.messages() );
+			}
+		}
+		return messages;
+	}
+
+	private void compute( View view ) throws CommandLineException, IOException, CodeCheckException {
+		if( view == View.PROGRAM ) {
+			program();
+		} else {
+			modules();
+		}
+	}
+
+	/*
+	 * A failure of the first view is never stored, as the result is then not cached.
+	 * A failure of the other view is stored, because the cached result is dropped anyway
+	 * as soon as the source or one of the imported modules changes.
+	 */
+	private void recordFailureOfSecondView( CodeCheckException e, View view ) {
+		if( view == View.PROGRAM && modules != null ) {
+			programFailure = e;
+		} else if( view == View.MODULES && program != null ) {
+			modulesFailure = e;
+		}
+	}
+
+	/**
+	 * @return the URIs of all the modules read by the computed views, used by the ParseCache to know when the
+	 * result is outdated
+	 */
+	private Collection< URI > sources() {
+		Set< URI > sources = new HashSet<>();
+		if( program != null ) {
+			sources.addAll( Arrays.asList( program.getSources() ) );
+		}
+		if( modules != null ) {
+			sources.addAll( modules.symbolTables().keySet() );
+		}
+		return sources;
+	}
+
+	/**
+	 * The parts of the interpreter configuration that are needed for parsing and that do not depend on the
+	 * inspected module, they are built once instead of creating a CommandLineParser for every inspection
+	 */
+	private static final class ParserConfiguration {
+		private static volatile ParserConfiguration instance;
+
+		private final String charset;
+		private final ClassLoader classLoader;
+		private final Map< String, Scanner.Token > constants;
+		private final String executionTarget;
+
+		private ParserConfiguration( Interpreter.Configuration configuration ) {
+			this.charset = configuration.charset();
+			this.classLoader = configuration.jolieClassLoader();
+			this.constants = configuration.constants();
+			this.executionTarget = configuration.executionTarget();
+		}
+
+		private static ParserConfiguration get() throws CommandLineException, IOException {
+			ParserConfiguration configuration = instance;
+			if( configuration == null ) {
+				synchronized( ParserConfiguration.class ) {
+					configuration = instance;
+					if( configuration == null ) {
+						configuration = create();
+						instance = configuration;
+					}
+				}
+			}
+			return configuration;
+		}
+
+		private static ParserConfiguration create() throws CommandLineException, IOException {
+			// the command line parser needs an existing program file, it is only used for reading the defaults
+			File placeholder = File.createTempFile( "inspector", ".ol" );
+			try {
+				String[] args = { placeholder.getAbsolutePath() };
+				Interpreter.Configuration interpreterConfiguration =
+					new CommandLineParser( args, Inspector.class.getClassLoader() ).getInterpreterConfiguration();
+				try( InputStream programStream = interpreterConfiguration.inputStream() ) {
+					return new ParserConfiguration( interpreterConfiguration );
+				}
+			} finally {
+				placeholder.delete();
+			}
+		}
+
+		/**
+		 * The SemanticVerifier configuration is mutable, so every parse gets its own
+		 */
+		private SemanticVerifier.Configuration semanticConfiguration() {
+			SemanticVerifier.Configuration configuration = new SemanticVerifier.Configuration( executionTarget );
+			configuration.setCheckForMain( false );
+			return configuration;
+		}
+	}
+}
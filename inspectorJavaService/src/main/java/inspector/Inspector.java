@@ -26,7 +26,6 @@
 package inspector;
 
 import jolie.cli.CommandLineException;
-import jolie.cli.CommandLineParser;
 import jolie.Interpreter;
 import jolie.lang.CodeCheckException;
 import jolie.lang.CodeCheckMessage;
@@ -41,23 +40,24 @@ import jolie.lang.parse.context.ParsingContext;
 import jolie.lang.parse.module.ModuleException;
 import jolie.lang.parse.module.ImportedSymbolInfo;
 import jolie.lang.parse.module.LocalSymbolInfo;
+import jolie.lang.parse.module.SymbolTable;
 import jolie.lang.parse.util.Interfaces;
-import jolie.lang.parse.util.ParsingUtils;
 import jolie.lang.parse.util.ProgramInspector;
+import jolie.net.CommMessage;
 import jolie.runtime.FaultException;
 import jolie.runtime.JavaService;
 import jolie.runtime.Value;
 import jolie.runtime.ValueVector;
 import jolie.runtime.embedding.RequestResponse;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.stream.Stream;
 
 //@AndJarDeps( "jolie-inspector-0.1.0.jar" )
@@ -96,11 +96,6 @@ public class Inspector extends JavaService {
 		private static final String DOCUMENTATION = "documentation";
 	}
 
-	private static final class TypeDefinitionInfoType {
-		private static final String NAME = "name";
-		private static final String TYPE = "type";
-	}
-
 	private static final class TypeInfoType {
 		private static final String DOCUMENTATION = "documentation";
 		private static final String FIELDS = "fields";
@@ -109,6 +104,7 @@ public class Inspector extends JavaService {
 		private static final String LINKED_TYPE_NAME = "linkedTypeName";
 		private static final String LEFT = "left";
 		private static final String RIGHT = "right";
+		private static final String TRUNCATED = "truncated";
 	}
 
 	private static final class FaultInfoType {
@@ -116,6 +112,31 @@ public class Inspector extends JavaService {
 		private static final String TYPE = "type";
 	}
 
+	private static final class TypeResolutionResponse {
+		private static final String NAME = "name";
+		private static final String TYPE = "type";
+		private static final String CODE = "code";
+	}
+
+	private static final class OperationSignatureType {
+		private static final String OPERATION = "operation";
+		private static final String PORT = "port";
+		private static final String INPUT_PORT = "inputPort";
+		private static final String INTERFACE = "interface";
+		private static final String REQUEST_TYPE = "requestType";
+		private static final String RESPONSE_TYPE = "responseType";
+		private static final String FAULT = "faults";
+		private static final String DOCUMENTATION = "documentation";
+		private static final String LABEL = "label";
+	}
+
+	private static final int UNLIMITED_DEPTH = -1;
+	private static final int DEFAULT_TYPE_DEPTH = 2;
+	// how many symbols a workspace symbol query returns at most, unless the request says otherwise
+	private static final int DEFAULT_SYMBOL_LIMIT = InspectorSettings.getInt( "inspector.workspaceSymbols.limit", 200 );
+	// how many completion items are returned at most, the client asks again while the word grows
+	private static final int COMPLETION_LIMIT = InspectorSettings.getInt( "inspector.completion.limit", 100 );
+
 	private static final class FieldType {
 		private static final String NAME = "name";
 		private static final String RANGE = "range";
@@ -133,16 +154,31 @@ public class Inspector extends JavaService {
 	 */
 	@RequestResponse
 	public Value inspectFile( Value request ) throws FaultException {
-		System.out.println("Inside inspectFile");
+		return Metrics.time( "inspectFile", () -> doInspectFile( request ) );
+	}
+
+	private Value doInspectFile( Value request ) throws FaultException {
 		try {
-			final ProgramInspector inspector;
+			final InspectionResult inspection;
 			String[] includePaths =
 				request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
 			String source = request.getFirstChild( "source" ).strValue();
 			String fileName = request.getFirstChild( "filename" ).strValue();
-			inspector = getInspector( fileName, Optional.of(source), includePaths, interpreter() );
-			System.out.println("No error was thrown while running getInspector");
-			return buildPortInspectionResponse( inspector );
+			// the inspection of an old version of a document is abandoned, a newer version will be inspected instead,
+			// it is checked before and after the parse, which is a single call into the Jolie parser, and between ports
+			checkInspectionIsLatest( request );
+			inspection = getInspection( fileName, Optional.of(source), includePaths, interpreter() );
+			checkInspectionIsLatest( request );
+			return buildPortInspectionResponse( inspection.program(), inspection.fragments(), () -> {
+				if( isStaleInspection( request ) ) {
+					throw new CancellationException( "InspectionCancelled" );
+				}
+			} );
+		} catch( FaultException ex ) {
+			throw ex;
+		} catch( CancellationException ex ) {
+			DiagnosticsScheduler.instance().inspectionCancelled();
+			throw new FaultException( "InspectionCancelled" );
 		} catch( CodeCheckException ex ) {
 			// Create a value containing the information needed from the CodeCheckException to create the correct diagnostic
 			// in the language server
@@ -171,6 +207,339 @@ public class Inspector extends JavaService {
 		}
 	}
 
+	/**
+	 * Used in languageserver/internal/inspection-utils.ol scheduleInspection
+	 * Registers a new version of a document and returns right away. Once no newer version arrived
+	 * for the debounce interval of the diagnostics, the request is sent back to the embedding service
+	 * through its inspectScheduled operation, which inspects it
+	 * @param request DiagnosticsTurnRequest: uri (string) and version (int) of the document
+	 */
+	public void scheduleDiagnostics( Value request ) {
+		String uri = request.getFirstChild( "uri" ).strValue();
+		long version = request.getFirstChild( "version" ).longValue();
+		DiagnosticsScheduler.instance().schedule( uri, version,
+			() -> sendMessage( CommMessage.createRequest( "inspectScheduled", "/", request ) ) );
+	}
+
+	/**
+	 * Used in languageserver/internal/inspection-utils.ol scheduleInspection
+	 * @param request DiagnosticsTurnRequest: uri (string) and version (int) of the inspected document
+	 * @return true if the diagnostics are for the latest version of the document and should be published
+	 */
+	@RequestResponse
+	public Value shouldPublishDiagnostics( Value request ) {
+		String uri = request.getFirstChild( "uri" ).strValue();
+		long version = request.getFirstChild( "version" ).longValue();
+		return Value.create( DiagnosticsScheduler.instance().shouldPublish( uri, version ) );
+	}
+
+	/**
+	 * Used in languageserver/internal/utils.ol deleteDocument, as a reopened document starts again from version 1
+	 * @param request the uri of the closed document
+	 */
+	public void forgetDiagnostics( Value request ) {
+		DiagnosticsScheduler.instance().forget( request.strValue() );
+	}
+
+	/**
+	 * Used in languageserver/internal/utils.ol deleteDocument
+	 * @param request the uri of the closed document
+	 */
+	public void forgetSemanticTokens( Value request ) {
+		SemanticTokens.forget( request.strValue() );
+	}
+
+	/**
+	 * Used in languageserver/internal/utils.ol deleteDocument
+	 * @param request the uri of the closed document
+	 */
+	public void forgetDocumentSymbols( Value request ) {
+		DocumentSymbols.forget( request.strValue() );
+	}
+
+	/**
+	 * Used in languageserver/internal/utils.ol deleteDocument
+	 * @param request the uri of the closed document
+	 */
+	public void forgetCompletions( Value request ) {
+		CompletionIndex.forget( request.strValue() );
+	}
+
+	/**
+	 * Used in languageserver/internal/utils.ol deleteDocument
+	 * @param request the uri of the closed document
+	 */
+	public void forgetOperationSignatures( Value request ) {
+		OperationSignatures.forget( request.strValue() );
+	}
+
+	/**
+	 * Used in languageserver/main.ol initialize, the legend of the semantic tokens capability
+	 * @param request void
+	 * @return SemanticTokensLegend: the token types and token modifiers, in the order used by the encoding
+	 */
+	@RequestResponse
+	public Value getSemanticTokensLegend( Value request ) {
+		Value result = Value.create();
+		ValueVector tokenTypes = result.getFirstChild( "tokenTypes" ).getChildren( "_" );
+		SemanticTokens.TOKEN_TYPES.forEach( tokenType -> tokenTypes.add( Value.create( tokenType ) ) );
+		ValueVector tokenModifiers = result.getFirstChild( "tokenModifiers" ).getChildren( "_" );
+		SemanticTokens.TOKEN_MODIFIERS.forEach( tokenModifier -> tokenModifiers.add( Value.create( tokenModifier ) ) );
+		return result;
+	}
+
+	/**
+	 * Used in languageserver/internal/text-document.ol semanticTokensFull and semanticTokensDelta
+	 * The tokens are computed from the cached inspection of the source. If the source does not compile,
+	 * the latest tokens of the document are kept, so the highlighting does not disappear while typing
+	 * @param request SemanticTokensRequest: filename, includePaths, source, uri of the document,
+	 * previousResultId (optional, the edits to the previous result are returned if it is still the latest one)
+	 * @return SemanticTokensResponse: the LSP SemanticTokens, or the LSP SemanticTokensDelta if previousResultId was given
+	 */
+	@RequestResponse
+	public Value semanticTokens( Value request ) {
+		return Metrics.time( "semanticTokens", () -> doSemanticTokens( request ) );
+	}
+
+	private Value doSemanticTokens( Value request ) {
+		String[] includePaths =	request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
+		String fileName = request.getFirstChild( "filename" ).strValue();
+		String source = request.getFirstChild( "source" ).strValue();
+		String uri = request.getFirstChild( "uri" ).strValue();
+		SemanticTokens.Result previous = SemanticTokens.latest( uri );
+		boolean delta = request.hasChildren( "previousResultId" ) && previous != null
+			&& previous.resultId().equals( request.getFirstChild( "previousResultId" ).strValue() );
+
+		SemanticTokens.Result current;
+		try {
+			InspectionResult inspection = getInspection( fileName, Optional.of( source ), includePaths, interpreter() );
+			current = SemanticTokens.store( uri, SemanticTokens.encode( inspection.program(), source ) );
+		} catch( CommandLineException | IOException | CodeCheckException ex ) {
+			current = previous != null ? previous : SemanticTokens.store( uri, new int[ 0 ] );
+		}
+
+		Value result = Value.create();
+		result.setFirstChild( "resultId", current.resultId() );
+		if( delta ) {
+			ValueVector edits = result.getFirstChild( "edits" ).getChildren( "_" );
+			for( SemanticTokens.Edit edit : SemanticTokens.diff( previous.data(), current.data() ) ) {
+				Value editValue = Value.create();
+				editValue.setFirstChild( "start", edit.start() );
+				editValue.setFirstChild( "deleteCount", edit.deleteCount() );
+				addIntegers( editValue.getFirstChild( "data" ), edit.data() );
+				edits.add( editValue );
+			}
+		} else {
+			addIntegers( result.getFirstChild( "data" ), current.data() );
+		}
+		return result;
+	}
+
+	/**
+	 * @param array the Value becoming a JSON array, through its "_" children
+	 * @param integers the elements of the array
+	 */
+	private static void addIntegers( Value array, int[] integers ) {
+		ValueVector elements = array.getChildren( "_" );
+		for( int integer : integers ) {
+			elements.add( Value.create( integer ) );
+		}
+	}
+
+	/**
+	 * Used in languageserver/internal/text-document.ol documentSymbol
+	 * The outline is built from the cached inspection of the source and kept until the document changes,
+	 * if the source does not compile the outline of the previous version is kept
+	 * @param request DocumentSymbolsRequest: filename, includePaths, source, uri of the document
+	 * @return DocumentSymbolsResponse: the LSP DocumentSymbols of the module, in the "_" children
+	 */
+	@RequestResponse
+	public Value documentSymbols( Value request ) {
+		return Metrics.time( "documentSymbols", () -> doDocumentSymbols( request ) );
+	}
+
+	private Value doDocumentSymbols( Value request ) {
+		String[] includePaths =	request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
+		String fileName = request.getFirstChild( "filename" ).strValue();
+		String source = request.getFirstChild( "source" ).strValue();
+		return DocumentSymbols.of( request.getFirstChild( "uri" ).strValue(), source, previous -> {
+			try {
+				InspectionResult inspection = getInspection( fileName, Optional.of( source ), includePaths, interpreter() );
+				return DocumentSymbols.build( inspection.program(), inspection.uri(), source );
+			} catch( CommandLineException | IOException | CodeCheckException ex ) {
+				return previous != null ? previous : Value.create();
+			}
+		} );
+	}
+
+	/**
+	 * Used in languageserver/internal/text-document.ol completion
+	 * The completions come from the index of the document, which is built once for every version that compiles,
+	 * so the completions of a document that is being typed come from its last version that compiled
+	 * @param request CompletionRequest: filename, includePaths, source, uri of the document and position
+	 * @return CompletionResponse: the LSP CompletionList, with the best items first
+	 */
+	@RequestResponse
+	public Value completions( Value request ) {
+		return Metrics.time( "completions", () -> doCompletions( request ) );
+	}
+
+	private Value doCompletions( Value request ) {
+		String[] includePaths =	request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
+		String fileName = request.getFirstChild( "filename" ).strValue();
+		String source = request.getFirstChild( "source" ).strValue();
+		CompletionIndex index = CompletionIndex.latest( request.getFirstChild( "uri" ).strValue(), source, () -> {
+			try {
+				InspectionResult inspection = getInspection( fileName, Optional.of( source ), includePaths, interpreter() );
+				return CompletionIndex.of( inspection.program(), inspection.signatures() );
+			} catch( CommandLineException | IOException | CodeCheckException ex ) {
+				return null;
+			}
+		} );
+
+		Value position = request.getFirstChild( "position" );
+		LineIndex lines = LineIndex.of( source );
+		int line = position.getFirstChild( "line" ).intValue();
+		String text = line >= 0 && line < lines.lineCount()
+			? source.substring( lines.lineStart( line ), lines.lineEnd( line ) )
+			: "";
+		CompletionIndex.Completions completions =
+			index.complete( text, position.getFirstChild( "character" ).intValue(), COMPLETION_LIMIT );
+
+		Value result = Value.create();
+		result.setFirstChild( "isIncomplete", completions.isIncomplete() );
+		ValueVector items = result.getChildren( "items" );
+		for( CompletionIndex.Item item : completions.items() ) {
+			Value itemValue = Value.create();
+			itemValue.setFirstChild( "label", item.label() );
+			itemValue.setFirstChild( "kind", item.kind() );
+			if( item.detail() != null ) {
+				itemValue.setFirstChild( "detail", item.detail() );
+			}
+			if( item.documentation() != null ) {
+				itemValue.setFirstChild( "documentation", item.documentation() );
+			}
+			// a snippet
+			itemValue.setFirstChild( "insertTextFormat", 2 );
+			itemValue.setFirstChild( "insertText", item.insertText() );
+			items.add( itemValue );
+		}
+		return result;
+	}
+
+	/**
+	 * Runs a workspace operation that stops when a newer request of the same kind arrives, see CancellationRegistry
+	 * @param kind what the operation answers
+	 * @param operation the operation, which checks its token between the modules it goes through
+	 * @return the result of the operation, no modules if it was cancelled
+	 */
+	private static Value cancellable( CancellationRegistry.Kind kind,
+		CancellationRegistry.Operation< Value, FaultException > operation ) throws FaultException {
+		try {
+			return CancellationRegistry.instance().run( kind, operation );
+		} catch( CancellationException ex ) {
+			// the binding sends every fault with the code -32000, which clients show as a failure,
+			// while the LSP lets a cancelled request return its partial result
+			Log.debug( () -> ex.getMessage() + ", a newer request replaced it" );
+			return Value.create();
+		}
+	}
+
+	/**
+	 * @param request void
+	 * @return DiagnosticsStatistics: how many inspections were scheduled, coalesced, cancelled while running,
+	 * dropped after running and published
+	 */
+	@RequestResponse
+	public Value getDiagnosticsStatistics( Value request ) {
+		DiagnosticsScheduler scheduler = DiagnosticsScheduler.instance();
+		Value result = Value.create();
+		result.setFirstChild( "debounceMs", scheduler.debounceMillis() );
+		result.setFirstChild( "scheduled", scheduler.scheduled() );
+		result.setFirstChild( "coalesced", scheduler.coalesced() );
+		result.setFirstChild( "cancelled", scheduler.cancelled() );
+		result.setFirstChild( "dropped", scheduler.dropped() );
+		result.setFirstChild( "published", scheduler.published() );
+		return result;
+	}
+
+	/**
+	 * @param request void
+	 * @return ResponseStatistics: how many inspection responses were built, how many bytes were allocated for them,
+	 * and how often the Values of types and interfaces were reused instead of built
+	 */
+	@RequestResponse
+	public Value getResponseStatistics( Value request ) {
+		Value result = Value.create();
+		result.setFirstChild( "responses", ValueFragments.responses() );
+		result.setFirstChild( "allocatedBytes", ValueFragments.allocatedBytes() );
+		result.setFirstChild( "fragmentHits", ValueFragments.hits() );
+		result.setFirstChild( "fragmentMisses", ValueFragments.misses() );
+		return result;
+	}
+
+	/**
+	 * @param request void
+	 * @return InspectorMetrics: the latency of every operation of the inspector, how many times each module was parsed,
+	 * how many files the workspace operations went through, how many bytes were read from disk and how well the
+	 * ParseCache is doing
+	 */
+	@RequestResponse
+	public Value getMetrics( Value request ) {
+		Metrics metrics = Metrics.instance();
+		Value result = Value.create();
+		ValueVector operations = result.getChildren( "operations" );
+		metrics.operations().forEach( ( name, histogram ) -> {
+			Value operation = Value.create();
+			operation.setFirstChild( "name", name );
+			operation.setFirstChild( "count", histogram.count() );
+			operation.setFirstChild( "meanMicros", histogram.mean() );
+			operation.setFirstChild( "p50Micros", histogram.percentile( 50 ) );
+			operation.setFirstChild( "p90Micros", histogram.percentile( 90 ) );
+			operation.setFirstChild( "p99Micros", histogram.percentile( 99 ) );
+			operation.setFirstChild( "maxMicros", histogram.max() );
+			operations.add( operation );
+		} );
+		ValueVector parses = result.getChildren( "parses" );
+		metrics.parses().forEach( ( uri, count ) -> {
+			Value module = Value.create( uri.toString() );
+			module.setFirstChild( "count", count );
+			parses.add( module );
+		} );
+		ValueVector filesScanned = result.getChildren( "filesScanned" );
+		metrics.filesScanned().forEach( ( operation, count ) -> {
+			Value files = Value.create( operation );
+			files.setFirstChild( "count", count );
+			filesScanned.add( files );
+		} );
+		result.setFirstChild( "bytesRead", metrics.bytesRead() );
+		ParseCache parseCache = ParseCache.instance();
+		Value parseCacheMetrics = result.getFirstChild( "parseCache" );
+		parseCacheMetrics.setFirstChild( "hits", parseCache.hits() );
+		parseCacheMetrics.setFirstChild( "misses", parseCache.misses() );
+		parseCacheMetrics.setFirstChild( "evictions", parseCache.evictions() );
+		parseCacheMetrics.setFirstChild( "estimatedBytes", parseCache.estimatedBytes() );
+		result.setFirstChild( "droppedLogMessages", Log.dropped() );
+		result.setFirstChild( "cancelledRequests", CancellationRegistry.instance().cancelled() );
+		return result;
+	}
+
+	/**
+	 * @param request InspectionRequest, which has an uri and a version if it comes from the diagnostics scheduling
+	 * @throws FaultException InspectionCancelled if a newer version of the document is waiting to be inspected
+	 */
+	private static void checkInspectionIsLatest( Value request ) throws FaultException {
+		if( isStaleInspection( request ) ) {
+			DiagnosticsScheduler.instance().inspectionCancelled();
+			throw new FaultException( "InspectionCancelled" );
+		}
+	}
+
+	private static boolean isStaleInspection( Value request ) {
+		return request.hasChildren( "uri" ) && request.hasChildren( "version" ) && !DiagnosticsScheduler.instance()
+			.isLatest( request.getFirstChild( "uri" ).strValue(), request.getFirstChild( "version" ).longValue() );
+	}
+
 	/**
 	 * Used in languageserver/internal/text-document.ol Definition call
 	 * @param request ModuleInspectionRequest: contains list of includePaths, character (int describing number character on line), line (int describing line),
@@ -179,6 +548,10 @@ public class Inspector extends JavaService {
 	 */
 	@RequestResponse
 	public Value inspectModule( Value request ) {
+		return Metrics.time( "inspectModule", () -> doInspectModule( request ) );
+	}
+
+	private Value doInspectModule( Value request ) {
 		Value result = Value.create();
 		String[] includePaths =	request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
 		int column = request.getFirstChild("position").getFirstChild("character").intValue();
@@ -188,7 +561,7 @@ public class Inspector extends JavaService {
 		String wordWeAreLookingFor = "";
 		try {
 			// find the word we are looking for by checking the position in the source and calculating the word
-			wordWeAreLookingFor = findWordWeAreLookingFor(fileName, column, line, Optional.of(source));
+			wordWeAreLookingFor = wordAt( LineIndex.of( source ), line, column );
 
 			//get the parseResult which contains the map of symbolTables
 			final SemanticVerifier parseResult = getModuleInspector( fileName, Optional.of( source ), includePaths, interpreter() );
@@ -211,69 +584,212 @@ public class Inspector extends JavaService {
 			// as no symbolname can be used twice, and is therefor only in the symboltables once
 			return result;
 		} catch( Exception ex) { //Exceptions from the compiler do not matter, as they are found by the fileinspector whenever the file is changed
-			System.out.println("Could not search for symbol '"+wordWeAreLookingFor+"'. An exception happened while inspecting module.\n"+ex.getMessage());
+			final String word = wordWeAreLookingFor;
+			Log.debug( () -> "Could not search for symbol '" + word + "'. An exception happened while inspecting module.\n" + ex.getMessage() );
 		}
 		return result;
 	}
 
 	/**
 	 * Is used in languageserver/internal/workspace.ol symbol call
-	 * @param request WorkspaceModulesInspectionRequest: list of includePaths, rootUri as a string, symbol name as a string
-	 * @return MoreSymbolsPerModule: list of modules, each containing a list symbols with a name and a context
+	 * @param request WorkspaceModulesInspectionRequest: list of includePaths, rootUri as a string, symbol name as a string,
+	 * limit as an optional int
+	 * @return MoreSymbolsPerModule: list of modules, each containing a list symbols with a name, a kind and a context,
+	 * only the symbols matching the symbol name best are kept, see FuzzyMatcher
 	 * TODO: When the symboltables contain all occurences of the same symbol in the same module, we need to return those as well
 	 */
 	@RequestResponse
-	public Value inspectWorkspaceModules( Value request ) {
+	public Value inspectWorkspaceModules( Value request ) throws FaultException {
+		return Metrics.time( "inspectWorkspaceModules", () -> cancellable( CancellationRegistry.Kind.SYMBOL_QUERY,
+			token -> doInspectWorkspaceModules( request, token ) ) );
+	}
+
+	private Value doInspectWorkspaceModules( Value request, CancellationRegistry.Token token ) {
 		// Create return Value
 		Value result = Value.create();
 		// Get request information
 		String[] includePaths =	request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
 		String rootUri = request.getFirstChild( "rootUri" ).strValue();
 		String wordWeAreLookingFor = request.getFirstChild("symbol").strValue();
+		int limit = symbolLimit( request );
 		
 		try {
-			// Go through all modules in workspace and look for the symbol
-			File rootPath = new File(rootUri);
-			Stream<Path> allFiles = Files.walk(rootPath.toPath());
-			File[] olFiles = allFiles.filter(Files::isRegularFile).filter(path -> path.toString().endsWith(".ol")).map(Path::toFile).toArray( File[]::new );
-			allFiles.close();
-			ValueVector modules = result.getChildren("module");
-			for (File olfile : olFiles) {
-				String source = Files.readString(olfile.toPath());
+			// Go through all modules in workspace and look for the symbol, the modules are parsed in parallel
+			File[] olFiles = listOlFiles( rootUri );
+			Metrics.instance().filesScanned( "inspectWorkspaceModules", olFiles.length );
+			final Interpreter interpreter = interpreter();
+			List< ModuleSummary > scannedModules = WorkspaceScanner.scan( olFiles, olfile -> {
+				String source = Metrics.readString( olfile.toPath() );
 				try{
 					//get the parseResult which contains the map of symbolTables
-					final SemanticVerifier parseResult = getModuleInspector( olfile.toString(), Optional.of( source ), includePaths, interpreter() );
-					
-					Value module = Value.create(olfile.toString());
-					ValueVector symbols = module.getChildren("symbol");
-					//check the imported symbols
-					for (ImportedSymbolInfo importedSymbol : parseResult.symbolTables().get(olfile.toURI()).importedSymbolInfos()) {
-						//checking if the symbol is contained in curret symbol name instead of checking if they are equal, as we also want matches that contain our symbol
-						if(importedSymbol.name().contains(wordWeAreLookingFor)){
-							Value symbol = buildSymbolResponse( importedSymbol.context(), importedSymbol.name());
-							symbols.add(symbol);
-						}				
-					}
-					// check the local symbols
-					for (LocalSymbolInfo localSymbol : parseResult.symbolTables().get(olfile.toURI()).localSymbols()) {
-						if(localSymbol.name().contains(wordWeAreLookingFor)){
-							Value symbol = buildSymbolResponse(localSymbol.context(), localSymbol.name());
-							symbols.add(symbol);
-						}
-					}
-					modules.add(module);
+					final SemanticVerifier parseResult = getModuleInspector( olfile.toString(), Optional.of( source ), includePaths, interpreter );
+					SymbolTable symbolTable = parseResult.symbolTables().get( olfile.toURI() );
+					return symbolTable == null ? null : ModuleSummary.of( olfile.toString(), symbolTable );
 				} catch( CommandLineException | IOException | CodeCheckException ex) { //Exceptions from the compiler do not matter, as they are found by the fileinspector whenever the file is changed
-					System.out.println("Could not search for symbol '"+wordWeAreLookingFor+"' in "+olfile+" . Module contains errors.");
-					continue;
+					Log.debug( () -> "Could not search for symbol '" + wordWeAreLookingFor + "' in " + olfile + " . Module contains errors." );
+					return null;
 				}
+			}, token );
+			// only the best matches are kept, in the order of the files when they match equally well,
+			// no matter in which order they were parsed
+			SymbolIndex matches = new SymbolIndex();
+			scannedModules.stream().filter( Objects::nonNull ).forEach( matches::add );
+			Map< String, List< ModuleSummary.Symbol > > modules = new LinkedHashMap<>();
+			for( SymbolIndex.Entry entry : matches.queryRanked( wordWeAreLookingFor, limit ) ) {
+				modules.computeIfAbsent( entry.modulePath(), p -> new ArrayList<>() ).add( entry.symbol() );
 			}
+			addSymbolModules( result, modules );
 			return result;
-		} catch( IOException ex) { // An exception happened while reading or opening files in the workspace
-			System.out.println("Could not search for symbol '"+wordWeAreLookingFor+"'. An exception happened while reading files in the workspace.\n"+ex.getMessage());
+		} catch( CancellationException ex ) {
+			throw ex;
+		} catch( Exception ex) { // An exception happened while reading or opening files in the workspace
+			Log.warn( "Could not search for symbol '" + wordWeAreLookingFor + "'. An exception happened while reading files in the workspace.\n" + ex.getMessage() );
+		}
+		return result;
+	}
+
+	/**
+	 * Is used in languageserver/internal/workspace.ol symbol call.
+	 * The symbols are looked up in the WorkspaceIndex, which is built the first time the workspace is queried
+	 * and afterwards is updated through updateWorkspaceIndex, so a query does not parse any module
+	 * @param request WorkspaceModulesInspectionRequest: list of includePaths, rootUri as a string, symbol name as a string,
+	 * prefix as an optional bool (if true only symbols starting with the symbol name are returned),
+	 * limit as an optional int
+	 * @return MoreSymbolsPerModule: list of modules, each containing a list symbols with a name, a kind and a context.
+	 * Unless prefix is set, only the symbols matching the symbol name best are returned, see FuzzyMatcher,
+	 * with the modules ordered by their best match
+	 */
+	@RequestResponse
+	public Value queryWorkspaceSymbols( Value request ) throws FaultException {
+		return Metrics.time( "queryWorkspaceSymbols", () -> cancellable( CancellationRegistry.Kind.SYMBOL_QUERY,
+			token -> doQueryWorkspaceSymbols( request, token ) ) );
+	}
+
+	private Value doQueryWorkspaceSymbols( Value request, CancellationRegistry.Token token ) {
+		Value result = Value.create();
+		String[] includePaths =	request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
+		String rootUri = request.getFirstChild( "rootUri" ).strValue();
+		String wordWeAreLookingFor = request.getFirstChild( "symbol" ).strValue();
+		boolean prefixOnly = request.hasChildren( "prefix" ) && request.getFirstChild( "prefix" ).boolValue();
+
+		WorkspaceIndex index = WorkspaceIndex.forRoot( rootUri, includePaths );
+		try {
+			index.ensureBuilt( workspaceModuleLoader( index ), token );
+		} catch( IOException ex ) { // An exception happened while listing the files in the workspace
+			Log.warn( "Could not search for symbol '" + wordWeAreLookingFor + "'. An exception happened while reading files in the workspace.\n" + ex.getMessage() );
+			return result;
+		}
+		addSymbolModules( result, prefixOnly ? index.query( wordWeAreLookingFor, true )
+			: index.queryRanked( wordWeAreLookingFor, symbolLimit( request ) ) );
+		return result;
+	}
+
+	/**
+	 * Is used in languageserver/internal/workspace.ol symbol call, when the client accepts partial results.
+	 * Starts a search for the symbol in the background, whose results are then fetched with nextWorkspaceSymbols
+	 * @param request WorkspaceModulesInspectionRequest, see queryWorkspaceSymbols
+	 * @return the id of the search
+	 */
+	@RequestResponse
+	public Value startWorkspaceSymbolSearch( Value request ) {
+		String[] includePaths =	request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
+		String rootUri = request.getFirstChild( "rootUri" ).strValue();
+		String wordWeAreLookingFor = request.getFirstChild( "symbol" ).strValue();
+		boolean prefixOnly = request.hasChildren( "prefix" ) && request.getFirstChild( "prefix" ).boolValue();
+		WorkspaceIndex index = WorkspaceIndex.forRoot( rootUri, includePaths );
+		return Value.create( SymbolSearch.start( index, workspaceModuleLoader( index ), wordWeAreLookingFor, prefixOnly,
+			symbolLimit( request ) ) );
+	}
+
+	/**
+	 * Waits for the next results of a search started with startWorkspaceSymbolSearch
+	 * @param request the id of the search
+	 * @return WorkspaceSymbolBatch: the modules found since the previous call, and done if the search is over,
+	 * also when a newer search cancelled it
+	 */
+	@RequestResponse
+	public Value nextWorkspaceSymbols( Value request ) {
+		Value result = Value.create();
+		try {
+			SymbolSearch.Batch batch = SymbolSearch.next( request.longValue() );
+			addSymbolModules( result, batch.modules() );
+			result.setFirstChild( "done", batch.isDone() );
+		} catch( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			result.setFirstChild( "done", true );
 		}
 		return result;
 	}
 
+	/**
+	 * Adds the symbols to a MoreSymbolsPerModule response
+	 * @param result the response
+	 * @param modules the symbols grouped by module path, in the order they are added
+	 */
+	private static void addSymbolModules( Value result, Map< String, List< ModuleSummary.Symbol > > modules ) {
+		ValueVector moduleValues = result.getChildren( "module" );
+		modules.forEach( ( path, symbols ) -> {
+			Value module = Value.create( path );
+			ValueVector symbolValues = module.getChildren( "symbol" );
+			for( ModuleSummary.Symbol symbol : symbols ) {
+				Value symbolValue = buildSymbolResponse( symbol.line(), symbol.column(), symbol.name() );
+				symbolValue.setFirstChild( "kind", symbol.kind().lspSymbolKind() );
+				symbolValues.add( symbolValue );
+			}
+			moduleValues.add( module );
+		} );
+	}
+
+	/**
+	 * @param request a workspace symbol request, with an optional limit
+	 * @return how many symbols to return at most
+	 */
+	private static int symbolLimit( Value request ) {
+		return request.hasChildren( "limit" ) ? request.getFirstChild( "limit" ).intValue() : DEFAULT_SYMBOL_LIMIT;
+	}
+
+	/**
+	 * Is used in languageserver/internal/workspace.ol didChangeWatchedFiles and languageserver/internal/text-document.ol didSave
+	 * Updates the symbols of a module in the indexes of all the workspaces containing it
+	 * @param request WorkspaceFileChange: uri of the module as a path, deleted (optional bool) if the module was deleted
+	 */
+	public void updateWorkspaceIndex( Value request ) {
+		File file = new File( request.getFirstChild( "uri" ).strValue() );
+		boolean deleted = request.hasChildren( "deleted" ) && request.getFirstChild( "deleted" ).boolValue();
+		for( WorkspaceIndex index : WorkspaceIndex.containing( file ) ) {
+			if( deleted || !file.isFile() ) {
+				index.remove( file );
+			} else {
+				index.update( file, workspaceModuleLoader( index ) );
+			}
+		}
+	}
+
+	/**
+	 * @param index the index to load modules for
+	 * @return a loader parsing modules with the include paths of the index
+	 */
+	private WorkspaceIndex.ModuleLoader workspaceModuleLoader( WorkspaceIndex index ) {
+		return moduleLoader( index.includePaths(), interpreter() );
+	}
+
+	/**
+	 * @param includePaths the include paths used to parse the modules
+	 * @param interpreter the interpreter of the calling service, which provides the package paths
+	 * @return a loader parsing modules through the ParseCache and summarizing their symbol tables
+	 */
+	static WorkspaceIndex.ModuleLoader moduleLoader( String[] includePaths, Interpreter interpreter ) {
+		return olfile -> {
+			String source = Metrics.readString( olfile.toPath() );
+			SemanticVerifier parseResult = getModuleInspector( olfile.toString(), Optional.of( source ), includePaths, interpreter );
+			SymbolTable symbolTable = parseResult.symbolTables().get( olfile.toURI() );
+			if( symbolTable == null ) {
+				return new ModuleSummary( olfile.toString(), Collections.emptyList() );
+			}
+			return ModuleSummary.of( olfile.toString(), symbolTable, source );
+		};
+	}
+
 	/**
 	 * Is used in languageserver/internal/text-document rename call
 	 * @param request InspectionToRenameRequest in inspector.ol
@@ -283,7 +799,11 @@ public class Inspector extends JavaService {
 	 */
 	@RequestResponse
 	public Value inspectionToRename(Value request) throws FaultException {
-		System.out.println("Inside inspectionToRename");
+		return Metrics.time( "inspectionToRename", () -> cancellable( CancellationRegistry.Kind.RENAME,
+			token -> doInspectionToRename( request, token ) ) );
+	}
+
+	private Value doInspectionToRename( Value request, CancellationRegistry.Token token ) throws FaultException {
 		// Get information from request
 		String currentFile = request.getFirstChild("textDocument").getFirstChild("uri").strValue();
 		int column = request.getFirstChild("position").getFirstChild("character").intValue();
@@ -296,19 +816,21 @@ public class Inspector extends JavaService {
 		try {
 			// Since the client only provides the file and the position in the file, 
 			// we have to figure out which word is at the position
-			String wordWeAreLookingFor = findWordWeAreLookingFor(currentFile, column, line, Optional.empty());
+			File currentFilePath = new File(currentFile);
+			String sourceOfWordWeAreLookingFor = Metrics.readString( currentFilePath.toPath() ); // Read source code in as a string
+			LineIndex currentLines = LineIndex.of( sourceOfWordWeAreLookingFor );
+			String wordWeAreLookingFor = wordAt( currentLines, line, column );
 
-			//Get all modules in workspace
-			File rootPath = new File(rootUri);
-			Stream<Path> allFiles = Files.walk(rootPath.toPath());
-			File[] olFiles = allFiles.filter(Files::isRegularFile).filter(path -> path.toString().endsWith(".ol")).map(Path::toFile).toArray( File[]::new );
-			allFiles.close();
+			// Only the modules importing from the module declaring the symbol can contain it,
+			// they are found through the dependency graph of the workspace index
+			WorkspaceIndex workspaceIndex = WorkspaceIndex.forRoot( rootUri, includePaths );
+			workspaceIndex.ensureBuilt( workspaceModuleLoader( workspaceIndex ), token );
+			// the open modules are renamed in their unsaved text, which might import the symbol already
+			final Map< File, String > openSources = DocumentStore.openSources();
 			ValueVector modules = result.getChildren("module");
+			final Interpreter interpreter = interpreter();
 			
 			try {
-				// Get source of the currentFile for the parseResult
-				File currentFilePath = new File(currentFile);
-				String sourceOfWordWeAreLookingFor = Files.readString(currentFilePath.toPath()); // Read source code in as a string
 				final SemanticVerifier parseResult = getModuleInspector( currentFile, Optional.of( sourceOfWordWeAreLookingFor ), includePaths, interpreter() );
 				// make module object for the currentFile and its symbols
 				Value currentModule = Value.create(currentFilePath.toURI().normalize().toString());
@@ -321,8 +843,8 @@ public class Inspector extends JavaService {
 						// Create an entry in the result for this symbol
 						// Check if the context from the symbol actually points correctly to the word we are looking for,
 						// so we do not rename in the wrong place
-						System.out.println("localsymbol context:\n"+localSymbol.context().toString());
-						String wordFromContext = getWordFromContext(sourceOfWordWeAreLookingFor, localSymbol.context(), wordWeAreLookingFor);
+						Log.debug( () -> "localsymbol context:\n" + localSymbol.context() );
+						String wordFromContext = getWordFromContext(currentLines, localSymbol.context(), wordWeAreLookingFor);
 						if(wordFromContext.equals(wordWeAreLookingFor)){ // the rename will happen in the correct place, so we create symbol object
 							Value symbol = buildSymbolResponse(localSymbol.context(), localSymbol.name());
 							symbols.add(symbol);
@@ -331,9 +853,14 @@ public class Inspector extends JavaService {
 							throw new FaultException( "Rename abandoned. '"+wordWeAreLookingFor+"' exists in file: "+currentFile+". '"+wordWeAreLookingFor+"' could however not be located and renamed correctly. The user is required to do this manually if the renaming is still wanted." );
 						}
 						localSymbolFound = true;
-						for (File olfile : olFiles) { // go through all files in workspace and check if it has been imported anywhere
-							String source = Files.readString(olfile.toPath());
-							final SemanticVerifier parseResultForLoop = getModuleInspector( olfile.toString(), Optional.of( source ), includePaths, interpreter() );
+						// go through all files in workspace importing from currentFile and check if the symbol has been imported,
+						// the files are parsed in parallel and the first exception abandons the whole rename
+						File[] importers = workspaceIndex.importersOf( currentFilePath.toURI().normalize(), openSources );
+						Metrics.instance().filesScanned( "inspectionToRename", importers.length );
+						WorkspaceScanner.scan( importers, olfile -> {
+							String source = sourceOf( olfile, openSources );
+							LineIndex lines = LineIndex.of( source );
+							final SemanticVerifier parseResultForLoop = getModuleInspector( olfile.toString(), Optional.of( source ), includePaths, interpreter );
 							// create module object for each olfile
 							Value module = Value.create(olfile.toString());
 							ValueVector olfileSymbols = module.getChildren("symbol");
@@ -343,7 +870,7 @@ public class Inspector extends JavaService {
 								if(importedSymbol.name().equals(wordWeAreLookingFor) && importedSymbol.node().context().source().equals(currentFilePath.toURI().normalize())){
 									// Check if the context from the symbol actually points correctly to the word we are looking for,
 									// so we do not rename in the wrong place
-									String wordFromContext1 = getWordFromContext(source, importedSymbol.context(), wordWeAreLookingFor);
+									String wordFromContext1 = getWordFromContext(lines, importedSymbol.context(), wordWeAreLookingFor);
 									if(wordFromContext1.equals(wordWeAreLookingFor)){
 										Value symbol = buildSymbolResponse(importedSymbol.context(), importedSymbol.name());
 										olfileSymbols.add(symbol);
@@ -352,8 +879,9 @@ public class Inspector extends JavaService {
 									}
 									
 								}
-							}modules.add(module);
-						}
+							}
+							return module;
+						}, token ).forEach( modules::add );
 					}
 				}
 				// if the symbol we are renaming is not local to currentFile we check through imported symbols
@@ -365,7 +893,7 @@ public class Inspector extends JavaService {
 							if(importedFileURI.normalize().toString().contains(rootUri)){
 								// Check if the context from the symbol actually points correctly to the word we are looking for,
 								// so we do not rename in the wrong place
-								String wordFromContext = getWordFromContext(sourceOfWordWeAreLookingFor, currentFileImportedSymbol.context(), wordWeAreLookingFor);
+								String wordFromContext = getWordFromContext(currentLines, currentFileImportedSymbol.context(), wordWeAreLookingFor);
 								if(wordFromContext.equals(wordWeAreLookingFor)){
 									Value symbol = buildSymbolResponse(currentFileImportedSymbol.context(), currentFileImportedSymbol.name());
 									symbols.add(symbol);
@@ -376,8 +904,8 @@ public class Inspector extends JavaService {
 								// Check if the context from the symbol actually points correctly to the word we are looking for,
 								// so we do not rename in the wrong place
 								File importedFile = new File(importedFileURI.normalize().toString());
-								String importedSource = Files.readString(importedFile.toPath());
-								String importedWordFromContext = getWordFromContext(importedSource, currentFileImportedSymbol.node().context(), wordWeAreLookingFor);
+								String importedSource = sourceOf( importedFile, openSources );
+								String importedWordFromContext = getWordFromContext(LineIndex.of( importedSource ), currentFileImportedSymbol.node().context(), wordWeAreLookingFor);
 								if(importedWordFromContext.equals(wordWeAreLookingFor)){		
 									Value module = Value.create(importedFile.toString());
 									ValueVector importedFileSymbols = module.getChildren("symbol");
@@ -388,16 +916,21 @@ public class Inspector extends JavaService {
 									throw new FaultException( "Rename abandoned. '"+wordWeAreLookingFor+"' exists in file: "+importedFile.toString()+". '"+wordWeAreLookingFor+"' could however not be located and renamed correctly. The user is required to do this manually if the renaming is still wanted." );
 								}
 
-								// Go through all other files in workspace and check if they are importing this symbol so they can also be renamed
-								for (File olfile : olFiles) {
-									String source = Files.readString(olfile.toPath());
-									final SemanticVerifier parseResultForLoop = getModuleInspector( olfile.toString(), Optional.of( source ), includePaths, interpreter() );
+								// Go through all other files in workspace importing from the imported file and check if they are importing
+								// this symbol so they can also be renamed,
+								// the files are parsed in parallel and the first exception abandons the whole rename
+								File[] importers = workspaceIndex.importersOf( importedFileURI.normalize(), openSources );
+								Metrics.instance().filesScanned( "inspectionToRename", importers.length );
+								WorkspaceScanner.scan( importers, olfile -> {
+									String source = sourceOf( olfile, openSources );
+									LineIndex lines = LineIndex.of( source );
+									final SemanticVerifier parseResultForLoop = getModuleInspector( olfile.toString(), Optional.of( source ), includePaths, interpreter );
 									//check if the symbol is imported first		
 									Value module = Value.create(olfile.toString());
 									ValueVector olfileSymbols = module.getChildren("symbol");
 									for (ImportedSymbolInfo importedSymbol : parseResultForLoop.symbolTables().get(olfile.toURI()).importedSymbolInfos()) {
 										if(importedSymbol.name().equals(wordWeAreLookingFor) && importedSymbol.node().context().source().equals(importedFileURI.normalize())){
-											String wordFromContext1 = getWordFromContext(source, importedSymbol.node().context(), wordWeAreLookingFor);
+											String wordFromContext1 = getWordFromContext(lines, importedSymbol.node().context(), wordWeAreLookingFor);
 											if(wordFromContext1.equals(wordWeAreLookingFor)){
 												Value symbol = buildSymbolResponse(importedSymbol.node().context(), importedSymbol.name());
 												olfileSymbols.add(symbol);
@@ -406,8 +939,8 @@ public class Inspector extends JavaService {
 											}
 										}
 									}
-									modules.add(module);
-								}
+									return module;
+								}, token ).forEach( modules::add );
 							}
 						}
 					}
@@ -416,6 +949,8 @@ public class Inspector extends JavaService {
 			} catch (IOException ex) { // e.g. if one of the files could not be read
 				throw new FaultException("Rename abandoned.", ex);
 			}
+		} catch( CancellationException ex ) { // nothing is renamed, as the client does not wait for the result anymore
+			throw ex;
 		} catch (Exception ex){
 			if(!ex.getMessage().contains("Rename abandoned")){ //Will catch errors from inner try-catch statement as well
 				throw new FaultException("Rename abandoned. "+ex.getMessage());
@@ -426,87 +961,200 @@ public class Inspector extends JavaService {
 	}
 
 	/**
-	 * Some calls from the client only provide the position in the current file
-	 * and therefore we need to manually determine what the word we are looking for is
-	 * @param currentFile
-	 * @param column
-	 * @param line
-	 * @param optinalSource
-	 * @return
-	 * @throws IOException
+	 * Is used in languageserver/internal/text-document references call
+	 * Answered from the occurrence index of the workspace, only the current module is summarized again
+	 * since its source might not be saved yet
+	 * @param request ReferencesRequest in inspector.ol
+	 * @return MoreSymbolsPerModule in inspector.ol, the modules ordered by path
+	 * @throws FaultException if the workspace or the current module could not be read
 	 */
-	private String findWordWeAreLookingFor(String currentFile, int column, int line, Optional<String> optinalSource) throws IOException{
-		String wordWeAreLookingFor;
-		// Get the source code of the file
-		File currentFilePath = new File(currentFile);
-		String sourceOfWordWeAreLookingFor;
-		if(optinalSource.isPresent()){ // the source code has already been read and is provided by the caller
-			sourceOfWordWeAreLookingFor = optinalSource.get();
-		} else { // the source code is not provided, read it in
-			sourceOfWordWeAreLookingFor = Files.readString(currentFilePath.toPath()); // Read source code in as a string
-		}
-		String[] codeLines = sourceOfWordWeAreLookingFor.lines().toArray(String[]::new); //Split source into lines
-		String correctLine = codeLines[line].stripTrailing(); // get the line from the position
-		String beforeCourser = correctLine.substring(0, column).stripTrailing(); //get part of line before coursor
-		String[] splitByNonLetter = beforeCourser.split("[\\W]"); //split the part before the coursor by non letters
-		// Go through the split parts before the coursor to find the start index of the word we are looking for
-		int startOfWord = 0;
-		for (int i = 0; i < splitByNonLetter.length-1; i++) {
-			if(splitByNonLetter[i].length() == 0){ // We add 1 when we are looking at a 0 length split, as this is a nonletter with no sorrounding letters
-				startOfWord += 1;
-			} else { // add the length of the split, and if it is not the last split and the next part has length >=1, also add 1 for the nonletter character
-				startOfWord += splitByNonLetter[i].length();
-				if( (i+1) < splitByNonLetter.length ){
-					if(splitByNonLetter[i+1].length() >=1){
-						startOfWord += 1;
+	@RequestResponse
+	public Value findReferences( Value request ) throws FaultException {
+		return Metrics.time( "findReferences", () -> cancellable( CancellationRegistry.Kind.REFERENCES,
+			token -> doFindReferences( request, token ) ) );
+	}
+
+	private Value doFindReferences( Value request, CancellationRegistry.Token token ) throws FaultException {
+		String currentFile = request.getFirstChild( "textDocument" ).getFirstChild( "uri" ).strValue();
+		int column = request.getFirstChild( "position" ).getFirstChild( "character" ).intValue();
+		int line = request.getFirstChild( "position" ).getFirstChild( "line" ).intValue();
+		String rootUri = request.getFirstChild( "rootUri" ).strValue();
+		String[] includePaths =	request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
+		boolean includeDeclaration = request.hasChildren( "includeDeclaration" ) && request.getFirstChild( "includeDeclaration" ).boolValue();
+		Value result = Value.create();
+
+		try {
+			File currentFilePath = new File( currentFile ).getAbsoluteFile().toPath().normalize().toFile();
+			String source = request.hasChildren( "source" ) ? request.getFirstChild( "source" ).strValue()
+				: Metrics.readString( currentFilePath.toPath() );
+			String word = wordAt( LineIndex.of( source ), line, column );
+			if( word.isEmpty() ) {
+				return result;
+			}
+
+			WorkspaceIndex index = WorkspaceIndex.forRoot( rootUri, includePaths );
+			index.ensureBuilt( workspaceModuleLoader( index ), token );
+			// the current module is summarized from the source of the editor, if it does not compile
+			// the summary of its last saved version is used instead
+			ModuleSummary current;
+			try {
+				SemanticVerifier parseResult = getModuleInspector( currentFilePath.toString(), Optional.of( source ), includePaths, interpreter() );
+				SymbolTable symbolTable = parseResult.symbolTables().get( currentFilePath.toURI() );
+				current = symbolTable == null ? index.summary( currentFilePath ) : ModuleSummary.of( currentFilePath.toString(), symbolTable, source );
+			} catch( CommandLineException | CodeCheckException ex ) {
+				current = index.summary( currentFilePath );
+			}
+			String declarationKey = current == null ? null : current.declarationKey( word );
+			if( declarationKey == null ) {
+				return result;
+			}
+
+			SortedMap< String, List< ModuleSummary.Occurrence > > references = index.references( declarationKey );
+			List< ModuleSummary.Occurrence > currentReferences = OccurrenceIndex.group( current ).get( declarationKey );
+			if( currentReferences == null ) {
+				references.remove( current.path() );
+			} else {
+				references.put( current.path(), currentReferences );
+			}
+			ValueVector modules = result.getChildren( "module" );
+			references.forEach( ( path, occurrences ) -> {
+				// the module is given as a uri, like the modules of inspectionToRename
+				Value module = Value.create( new File( path ).toURI().normalize().toString() );
+				ValueVector symbols = module.getChildren( "symbol" );
+				for( ModuleSummary.Occurrence occurrence : occurrences ) {
+					if( includeDeclaration || !occurrence.isDeclaration() ) {
+						symbols.add( buildSymbolResponse( occurrence.line(), occurrence.startCharacter(), occurrence.name() ) );
 					}
 				}
-			}
+				if( symbols.size() > 0 ) {
+					modules.add( module );
+				}
+			} );
+			return result;
+		} catch( IOException ex ) {
+			throw new FaultException( ex );
 		}
-		String lineStartOfWord = correctLine.substring(startOfWord).trim(); // Get rest of the line, from where the word starts
-		if(lineStartOfWord.matches("^[\\w]+[\\W]+.*$")){ // if it matches a character or word followed by one or more non letters and 0 or more characters
-			wordWeAreLookingFor = lineStartOfWord.split("[^\\w]")[0]; // the first split contains the word
-		} else {
-			wordWeAreLookingFor = lineStartOfWord; //otherwise all of lineStartOfWord is the word
+	}
+
+	/**
+	 * @param rootUri the root of the workspace
+	 * @return all the modules in the workspace, ordered by path so that results do not depend on the file system
+	 * @throws IOException
+	 */
+	private static File[] listOlFiles( String rootUri ) throws IOException {
+		File rootPath = new File(rootUri);
+		try( Stream<Path> allFiles = Files.walk(rootPath.toPath()) ) {
+			return allFiles.filter(Files::isRegularFile).filter(path -> path.toString().endsWith(".ol")).sorted().map(Path::toFile).toArray( File[]::new );
 		}
-		return wordWeAreLookingFor;
+	}
+
+	/**
+	 * Some calls from the client only provide the position in the current file
+	 * and therefore we need to determine what the word we are looking for is
+	 * @param lines the line index of the current file
+	 * @param line
+	 * @param column
+	 * @return the identifier at the position, or the empty string if there is none
+	 */
+	private static String wordAt( LineIndex lines, int line, int column ) {
+		IdentifierLexer.Token token = IdentifierLexer.tokenAt( lines, line, column );
+		return token == null ? "" : token.text();
+	}
+
+	/**
+	 * @param file a module to rename in
+	 * @param openSources the unsaved text of the open modules, see DocumentStore.openSources
+	 * @return the unsaved text of the module if it is open, otherwise its saved text
+	 * @throws IOException
+	 */
+	private static String sourceOf( File file, Map< File, String > openSources ) throws IOException {
+		String source = openSources.get( file.getAbsoluteFile() );
+		return source != null ? source : Metrics.readString( file.toPath() );
 	}
 
 	/**
 	 * Used for checking if a symbol we are looking for matches the word we find
 	 * by using the symbol context to look at the source by the startcolumn and startline
-	 * @param source
+	 * @param lines the line index of the source
 	 * @param context
 	 * @param wordWeAreLookingFor
-	 * @return
+	 * @return the text at the context, or the empty string if the context is out of the source, which will cause an error by the caller
 	 */
-	private String getWordFromContext(String source, ParsingContext context, String wordWeAreLookingFor){
+	private static String getWordFromContext( LineIndex lines, ParsingContext context, String wordWeAreLookingFor ) {
+		return lines.textAt( context.startLine(), context.startColumn(), wordWeAreLookingFor.length() );
+	}
+
+	/**
+	 * Used by the position based requests of the language server to know which identifier is at the position,
+	 * e.g. hover and signatureHelp in languageserver/internal/text-document.ol
+	 * @param request TokenRequest: filename, source (optional, the file is read if missing), position with line and character,
+	 * and call (optional) to get the operation of the call whose parentheses contain the position instead
+	 * @return TokenResponse: the identifier and its range, and the port if it is the operation of a call op@Port
+	 * (the operation is returned when the position is on the port), void if there is no identifier at the position
+	 * @throws FaultException if the file could not be read
+	 */
+	@RequestResponse
+	public Value tokenAt( Value request ) throws FaultException {
+		return Metrics.time( "tokenAt", () -> doTokenAt( request ) );
+	}
+
+	private Value doTokenAt( Value request ) throws FaultException {
+		int line = request.getFirstChild( "position" ).getFirstChild( "line" ).intValue();
+		int character = request.getFirstChild( "position" ).getFirstChild( "character" ).intValue();
+		Value result = Value.create();
 		try {
-			String[] lines = source.lines().toArray(String[]::new); // split the source into lines
-			String lineString = lines[context.startLine()]; // get the line of source
-			// get the part of text that starts at the column and ends column+length(wordWeAreLookingFor)
-			String wordFromContext = lineString.substring(context.startColumn(), context.startColumn() + wordWeAreLookingFor.length());
-			return wordFromContext;	
-		} catch (IndexOutOfBoundsException e) { // if the line or column causes an IndexOutOfBoundsException then we cannot rename this symbol
-			return ""; // the empty string will cause an error by the caller
+			String source = request.hasChildren( "source" ) ? request.getFirstChild( "source" ).strValue()
+				: Metrics.readString( Paths.get( request.getFirstChild( "filename" ).strValue() ) );
+			LineIndex index = LineIndex.of( source );
+			IdentifierLexer.Token token = request.hasChildren( "call" ) && request.getFirstChild( "call" ).boolValue()
+				? IdentifierLexer.callAt( index, line, character )
+				: IdentifierLexer.tokenAt( index, line, character );
+			IdentifierLexer.Token port = null;
+			if( token != null ) {
+				IdentifierLexer.Token operation = IdentifierLexer.callingOperation( index, token );
+				if( operation != null ) { // the port of op@Port, the operation is the token that matters
+					port = token;
+					token = operation;
+				} else {
+					port = IdentifierLexer.calledPort( index, token );
+				}
+			}
+			if( token != null ) {
+				result.setFirstChild( "name", token.text() );
+				if( port != null ) {
+					result.setFirstChild( "port", port.text() );
+				}
+				Value range = result.getFirstChild( "range" );
+				range.getFirstChild( "start" ).setFirstChild( "line", token.line() );
+				range.getFirstChild( "start" ).setFirstChild( "character", token.startCharacter() );
+				range.getFirstChild( "end" ).setFirstChild( "line", token.line() );
+				range.getFirstChild( "end" ).setFirstChild( "character", token.endCharacter() );
+			}
+		} catch( IOException ex ) {
+			throw new FaultException( ex );
 		}
+		return result;
 	}
     
 	@RequestResponse
 	public Value inspectPorts( Value request ) throws FaultException {
+		return Metrics.time( "inspectPorts", () -> doInspectPorts( request ) );
+	}
+
+	private Value doInspectPorts( Value request ) throws FaultException {
 		try {
-			final ProgramInspector inspector;
+			final InspectionResult inspection;
 			String[] includePaths =
 				request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
 			if( request.hasChildren( "source" ) ) {
-				inspector = getInspector( request.getFirstChild( "filename" ).strValue(),
+				inspection = getInspection( request.getFirstChild( "filename" ).strValue(),
 					Optional.of( request.getFirstChild( "source" ).strValue() ), includePaths, interpreter() );
 			} else {
-				inspector =
-					getInspector( request.getFirstChild( "filename" ).strValue(), Optional.empty(), includePaths,
+				inspection =
+					getInspection( request.getFirstChild( "filename" ).strValue(), Optional.empty(), includePaths,
 						interpreter() );
 			}
-			return buildFileInspectionResponse( inspector );
+			return buildFileInspectionResponse( inspection.program(), inspection.fragments() );
 		} catch( CommandLineException | IOException | ParserException | ModuleException ex ) {
 			throw new FaultException( ex );
 		} catch( CodeCheckException ex ) {
@@ -518,13 +1166,17 @@ public class Inspector extends JavaService {
 
 	@RequestResponse
 	public Value inspectTypes( Value request ) throws FaultException {
+		return Metrics.time( "inspectTypes", () -> doInspectTypes( request ) );
+	}
+
+	private Value doInspectTypes( Value request ) throws FaultException {
 		String[] includePaths =
 			request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
 		try {
-			ProgramInspector inspector =
-				getInspector( request.getFirstChild( "filename" ).strValue(), Optional.empty(), includePaths,
+			InspectionResult inspection =
+				getInspection( request.getFirstChild( "filename" ).strValue(), Optional.empty(), includePaths,
 					interpreter() );
-			return buildProgramTypeInfo( inspector );
+			return buildProgramTypeInfo( inspection.program() );
 		} catch( CommandLineException | IOException | ParserException | ModuleException ex ) {
 			throw new FaultException( ex );
 		} catch( CodeCheckException ex ) {
@@ -535,7 +1187,142 @@ public class Inspector extends JavaService {
 	}
 
 	/**
-	 * Used for returning the inspector from compiling the code
+	 * Used in languageserver/internal/text-document.ol hover and signatureHelp
+	 * The signatures come from an index of the operations that is built once for every version of the module
+	 * @param request OperationLookupRequest: filename, includePaths, source (the file is read if it is missing),
+	 * operation, port (missing for the operations of the input ports) and the uri of the document
+	 * @return OperationLookupResponse: the signatures of the operation, none if it is not found; if the module does not
+	 * compile, the signatures of the last version of the document that compiled
+	 * @throws FaultException
+	 */
+	@RequestResponse
+	public Value lookupOperation( Value request ) throws FaultException {
+		return Metrics.time( "lookupOperation", () -> doLookupOperation( request ) );
+	}
+
+	private Value doLookupOperation( Value request ) throws FaultException {
+		String[] includePaths =
+			request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
+		Optional< String > source = request.hasChildren( "source" )
+			? Optional.of( request.getFirstChild( "source" ).strValue() )
+			: Optional.empty();
+		String operation = request.getFirstChild( "operation" ).strValue();
+		String port = request.hasChildren( "port" ) ? request.getFirstChild( "port" ).strValue() : null;
+		String uri = request.hasChildren( "uri" ) ? request.getFirstChild( "uri" ).strValue() : null;
+		try {
+			InspectionResult inspection =
+				getInspection( request.getFirstChild( "filename" ).strValue(), source, includePaths, interpreter() );
+			OperationSignatures signatures = inspection.signatures();
+			if( uri != null ) {
+				OperationSignatures.compiled( uri, signatures );
+			}
+			return buildLookupResponse( signatures, operation, port );
+		} catch( CommandLineException | IOException ex ) {
+			throw new FaultException( ex );
+		} catch( ParserException | ModuleException ex ) {
+			OperationSignatures lastCompiled = uri != null ? OperationSignatures.lastCompiled( uri ) : null;
+			if( lastCompiled != null ) {
+				// a document being edited often does not compile, its last version that did is used instead
+				return buildLookupResponse( lastCompiled, operation, port );
+			}
+			throw new FaultException( ex );
+		} catch( CodeCheckException ex ) {
+			OperationSignatures lastCompiled = uri != null ? OperationSignatures.lastCompiled( uri ) : null;
+			if( lastCompiled != null ) {
+				return buildLookupResponse( lastCompiled, operation, port );
+			}
+			throw new FaultException(
+				"SemanticException",
+				ex.getMessage() );
+		}
+	}
+
+	private static Value buildLookupResponse( OperationSignatures signatures, String operation, String port ) {
+		Value result = Value.create();
+		ValueVector signatureValues = result.getChildren( "signature" );
+		for( OperationSignatures.Signature signature : signatures.lookup( operation, port ) ) {
+			signatureValues.add( buildSignature( signature ) );
+		}
+		return result;
+	}
+
+	private static Value buildSignature( OperationSignatures.Signature signature ) {
+		Value result = Value.create();
+		result.setFirstChild( OperationSignatureType.OPERATION, signature.operation() );
+		result.setFirstChild( OperationSignatureType.PORT, signature.port() );
+		result.setFirstChild( OperationSignatureType.INPUT_PORT, signature.isInputPort() );
+		result.setFirstChild( OperationSignatureType.INTERFACE, signature.interfaceName() );
+		result.setFirstChild( OperationSignatureType.REQUEST_TYPE, signature.requestType() );
+		if( signature.responseType() != null ) {
+			result.setFirstChild( OperationSignatureType.RESPONSE_TYPE, signature.responseType() );
+		}
+		ValueVector faults = result.getChildren( OperationSignatureType.FAULT );
+		signature.faults().forEach( ( faultName, faultType ) -> {
+			Value faultInfo = Value.create();
+			faultInfo.setFirstChild( FaultInfoType.NAME, faultName );
+			faultInfo.setFirstChild( FaultInfoType.TYPE, faultType );
+			faults.add( faultInfo );
+		} );
+		if( signature.documentation() != null ) {
+			result.setFirstChild( OperationSignatureType.DOCUMENTATION, signature.documentation() );
+		}
+		result.setFirstChild( OperationSignatureType.LABEL, signature.label() );
+		return result;
+	}
+
+	/**
+	 * Used for describing a single type on demand, as the inspection responses only contain the names of the types
+	 * @param request TypeResolutionRequest: filename, includePaths, source (the file is read if it is missing),
+	 * name of the type and depth (how many levels of fields are described, 2 if missing, all if negative)
+	 * @return TypeResolutionResponse: the name of the resolved type, its TypeInfo and its code, void if it is not found
+	 * @throws FaultException
+	 */
+	@RequestResponse
+	public Value resolveType( Value request ) throws FaultException {
+		return Metrics.time( "resolveType", () -> doResolveType( request ) );
+	}
+
+	private Value doResolveType( Value request ) throws FaultException {
+		String[] includePaths =
+			request.getChildren( "includePaths" ).stream().map( Value::strValue ).toArray( String[]::new );
+		Optional< String > source = request.hasChildren( "source" )
+			? Optional.of( request.getFirstChild( "source" ).strValue() )
+			: Optional.empty();
+		String typeName = request.getFirstChild( "name" ).strValue();
+		int depth = request.hasChildren( "depth" ) ? request.getFirstChild( "depth" ).intValue() : DEFAULT_TYPE_DEPTH;
+		try {
+			InspectionResult inspection =
+				getInspection( request.getFirstChild( "filename" ).strValue(), source, includePaths, interpreter() );
+			Map< String, TypeDefinition > types = typesByName( inspection.program() );
+			TypeDefinition type = types.get( typeName );
+			// follow the aliases, in case of a cycle we stop at the first type that is seen again
+			Set< String > seen = new HashSet<>();
+			while( type instanceof TypeDefinitionLink && seen.add( type.name() )
+				&& types.containsKey( ((TypeDefinitionLink) type).linkedTypeName() ) ) {
+				type = types.get( ((TypeDefinitionLink) type).linkedTypeName() );
+			}
+			Value result = Value.create();
+			if( type != null ) {
+				result.setFirstChild( TypeResolutionResponse.NAME, type.name() );
+				result.getChildren( TypeResolutionResponse.TYPE )
+					.add( buildTypeInfoUpTo( type, inspection.fragments(), depth ) );
+				result.setFirstChild( TypeResolutionResponse.CODE, typeCode( type, depth ) );
+			}
+			return result;
+		} catch( CommandLineException | IOException | ParserException | ModuleException ex ) {
+			throw new FaultException( ex );
+		} catch( CodeCheckException ex ) {
+			throw new FaultException(
+				"SemanticException",
+				ex.getMessage() );
+		}
+	}
+
+	/**
+	 * Used for returning the inspection of the code, containing the inspector from compiling the code
+	 * and the Values already built for its types and interfaces.
+	 * The result is shared through the InspectionResult of the module, so the code is only compiled again if the source
+	 * or one of the modules it imports changed
 	 * @param filename
 	 * @param source
 	 * @param includePaths
@@ -545,37 +1332,15 @@ public class Inspector extends JavaService {
 	 * @throws IOException
 	 * @throws CodeCheckException
 	 */
-	private static ProgramInspector getInspector( String filename, Optional< String > source, String[] includePaths,
+	private static InspectionResult getInspection( String filename, Optional< String > source, String[] includePaths,
 		Interpreter interpreter )
 		throws CommandLineException, IOException, CodeCheckException {
-		String[] args = { filename };
-		Interpreter.Configuration interpreterConfiguration =
-			new CommandLineParser( args, Inspector.class.getClassLoader() ).getInterpreterConfiguration();
-		SemanticVerifier.Configuration configuration =
-			new SemanticVerifier.Configuration( interpreterConfiguration.executionTarget() );
-		configuration.setCheckForMain( false ); 
-		final InputStream sourceIs;
-		if( source.isPresent() ) {
-			sourceIs = new ByteArrayInputStream( source.get().getBytes() );
-		} else {
-			sourceIs = interpreterConfiguration.inputStream();
-		}
-		Program program = ParsingUtils.parseProgram(
-			sourceIs,
-			interpreterConfiguration.programFilepath().toURI(),
-			interpreterConfiguration.charset(),
-			includePaths,
-			// interpreterConfiguration.packagePaths(),
-			interpreter.configuration().packagePaths(), // TODO make this a parameter from the Jolie request
-			interpreterConfiguration.jolieClassLoader(),
-			interpreterConfiguration.constants(),
-			configuration,
-			true );
-		return ParsingUtils.createInspector( program );
+		return InspectionResult.of( filename, source, includePaths, interpreter, InspectionResult.View.PROGRAM );
 	}
 
 	/**
-	 * Used for returning the map of symboltables from compiling the source code
+	 * Used for returning the map of symboltables from compiling the source code.
+	 * The result is shared through the InspectionResult of the module, like in getInspection
 	 * @param filename
 	 * @param source
 	 * @param includePaths
@@ -585,33 +1350,10 @@ public class Inspector extends JavaService {
 	 * @throws IOException
 	 * @throws CodeCheckException
 	 */
-	private static SemanticVerifier getModuleInspector( String filename, Optional< String > source, String[] includePaths,
+	static SemanticVerifier getModuleInspector( String filename, Optional< String > source, String[] includePaths,
 		Interpreter interpreter )
 		throws CommandLineException, IOException, CodeCheckException {
-		String[] args = { filename };
-		Interpreter.Configuration interpreterConfiguration =
-			new CommandLineParser( args, Inspector.class.getClassLoader() ).getInterpreterConfiguration();
-		SemanticVerifier.Configuration configuration =
-			new SemanticVerifier.Configuration( interpreterConfiguration.executionTarget() );
-		configuration.setCheckForMain( false );
-		final InputStream sourceIs;
-		if( source.isPresent() ) {
-			sourceIs = new ByteArrayInputStream( source.get().getBytes() );
-		} else {
-			sourceIs = interpreterConfiguration.inputStream();
-		}
-		SemanticVerifier semanticVerifierResult = ParsingUtils.parseProgramModule(
-			sourceIs,
-			interpreterConfiguration.programFilepath().toURI(),
-			interpreterConfiguration.charset(),
-			includePaths,
-			// interpreterConfiguration.packagePaths(),
-			interpreter.configuration().packagePaths(), // TODO make this a parameter from the Jolie request
-			interpreterConfiguration.jolieClassLoader(),
-			interpreterConfiguration.constants(),
-			configuration,
-			true );
-		return semanticVerifierResult;
+		return InspectionResult.of( filename, source, includePaths, interpreter, InspectionResult.View.MODULES ).modules();
 	}
 
 	/**
@@ -622,12 +1364,15 @@ public class Inspector extends JavaService {
 	 * @return value containing context and symbol name
 	 */
 	private static Value buildSymbolResponse( ParsingContext context, String symbolName){
+		return buildSymbolResponse( context.startLine(), context.startColumn(), symbolName );
+	}
+	private static Value buildSymbolResponse( int line, int column, String symbolName){
 		Value symbol = Value.create(symbolName);
 		Value valueContext = Value.create();
-		valueContext.getNewChild("startLine").setValue(context.startLine());
-		valueContext.getNewChild("endLine").setValue(context.startLine());
-		valueContext.getNewChild("startColumn").setValue(context.startColumn());
-		valueContext.getNewChild("endColumn").setValue(context.startColumn()+symbolName.length());
+		valueContext.getNewChild("startLine").setValue(line);
+		valueContext.getNewChild("endLine").setValue(line);
+		valueContext.getNewChild("startColumn").setValue(column);
+		valueContext.getNewChild("endColumn").setValue(column+symbolName.length());
 		symbol.getNewChild("context").deepCopy(valueContext);
 		return symbol;
 	}
@@ -643,80 +1388,70 @@ public class Inspector extends JavaService {
 		return module;
 	}
     
-	private static Value buildFileInspectionResponse( ProgramInspector inspector ) {
-		Value result = Value.create();
-		ValueVector inputPorts = result.getChildren( FileInspectionResponse.INPUT_PORT );
-		ValueVector outputPorts = result.getChildren( FileInspectionResponse.OUTPUT_PORT );
-		ValueVector referredTypesValues = result.getChildren( FileInspectionResponse.REFERRED_TYPES );
-
-		Set< String > referredTypes = new HashSet<>();
-		for( InputPortInfo portInfo : inspector.getInputPorts() ) {
-			inputPorts.add( buildPortInfo( portInfo, inspector, referredTypes ) );
-		}
-
-		for( OutputPortInfo portInfo : inspector.getOutputPorts() ) {
-			outputPorts.add( buildPortInfo( portInfo, referredTypes ) );
-		}
-
-		Map< String, TypeDefinition > types = new HashMap<>();
-		for( TypeDefinition t : inspector.getTypes() ) {
-			types.put( t.name(), t );
-		}
-
-		referredTypes.stream().filter( types::containsKey )
-			.forEach( typeName -> referredTypesValues.add( buildTypeDefinition( types.get( typeName ) ) ) );
+	private static Value buildFileInspectionResponse( ProgramInspector inspector, ValueFragments fragments ) {
+		return ValueFragments.measure( () -> buildInspectionResponse( inspector, fragments,
+			FileInspectionResponse.INPUT_PORT, FileInspectionResponse.OUTPUT_PORT, FileInspectionResponse.REFERRED_TYPES,
+			() -> {} ) );
+	}
 
-		return result;
+	/**
+	 * @param checkpoint runs between the ports, it throws a CancellationException to abandon the response
+	 */
+	private static Value buildPortInspectionResponse( ProgramInspector inspector, ValueFragments fragments,
+		Runnable checkpoint ) {
+		return ValueFragments.measure( () -> buildInspectionResponse( inspector, fragments,
+			PortInspectionResponse.INPUT_PORT, PortInspectionResponse.OUTPUT_PORT, PortInspectionResponse.REFERRED_TYPES,
+			checkpoint ) );
 	}
 
-	private static Value buildPortInspectionResponse( ProgramInspector inspector ) {
+	private static Value buildInspectionResponse( ProgramInspector inspector, ValueFragments fragments,
+		String inputPortsName, String outputPortsName, String referredTypesName, Runnable checkpoint ) {
 		Value result = Value.create();
-		ValueVector inputPorts = result.getChildren( PortInspectionResponse.INPUT_PORT );
-		ValueVector outputPorts = result.getChildren( PortInspectionResponse.OUTPUT_PORT );
-		ValueVector referredTypesValues = result.getChildren( PortInspectionResponse.REFERRED_TYPES );
+		ValueVector inputPorts = result.getChildren( inputPortsName );
+		ValueVector outputPorts = result.getChildren( outputPortsName );
+		ValueVector referredTypesValues = result.getChildren( referredTypesName );
 
 		Set< String > referredTypes = new HashSet<>();
 		for( InputPortInfo portInfo : inspector.getInputPorts() ) {
-			inputPorts.add( buildPortInfo( portInfo, inspector, referredTypes ) );
+			checkpoint.run();
+			inputPorts.add( buildPortInfo( portInfo, inspector, fragments, referredTypes ) );
 		}
 
 		for( OutputPortInfo portInfo : inspector.getOutputPorts() ) {
-			outputPorts.add( buildPortInfo( portInfo, referredTypes ) );
+			checkpoint.run();
+			outputPorts.add( buildPortInfo( portInfo, fragments, referredTypes ) );
 		}
 
-		Map< String, TypeDefinition > types = new HashMap<>();
-		for( TypeDefinition t : inspector.getTypes() ) {
-			types.put( t.name(), t );
-		}
-
-		referredTypes.stream().filter( types::containsKey )
-			.forEach( typeName -> referredTypesValues.add( buildTypeDefinition( types.get( typeName ) ) ) );
+		// only the names of the types are sent, their definitions are fetched with resolveType when needed
+		Map< String, TypeDefinition > types = typesByName( inspector );
+		referredTypes.stream().filter( types::containsKey ).sorted()
+			.forEach( typeName -> referredTypesValues.add( Value.create( typeName ) ) );
 
 		return result;
 	}
 
-	private static Value buildTypeDefinition( TypeDefinition typeDef ) {
-		Value result = Value.create();
-		result.setFirstChild( TypeDefinitionInfoType.NAME, typeDef.name() );
-		result.getChildren( TypeDefinitionInfoType.TYPE ).add( buildTypeInfo( typeDef ) );
-		return result;
+	private static Value buildProgramTypeInfo( ProgramInspector inspector ) {
+		return ValueFragments.measure( () -> {
+			Value returnValue = Value.create();
+			ValueVector types = ValueVector.create();
+			returnValue.children().put( "types", types );
+			for( TypeDefinition type : inspector.getTypes() ) {
+				types.add( Value.create( type.name() ) );
+			}
+			return returnValue;
+		} );
 	}
 
-	private static Value buildProgramTypeInfo( ProgramInspector inspector ) {
-		Value returnValue = Value.create();
-		ValueVector types = ValueVector.create();
-		returnValue.children().put( "types", types );
-		for( TypeDefinition type : inspector.getTypes() ) {
-			Value typeDefinition = Value.create();
-			typeDefinition.setFirstChild( TypeDefinitionInfoType.NAME, type.name() );
-			typeDefinition.getChildren( TypeDefinitionInfoType.TYPE ).add( buildTypeInfo( type ) );
-			types.add( typeDefinition );
+	private static Map< String, TypeDefinition > typesByName( ProgramInspector inspector ) {
+		Map< String, TypeDefinition > types = new HashMap<>();
+		for( TypeDefinition t : inspector.getTypes() ) {
+			types.put( t.name(), t );
 		}
-		return returnValue;
+		return types;
 	}
 
 	private static Value buildPortInfo( InputPortInfo portInfo, ProgramInspector inspector,
-		Set< String > referredTypesSet ) {
+		ValueFragments fragments, Set< String > referredTypesSet ) {
 		Value result = Value.create();
 		result.setFirstChild( PortInfoType.NAME, portInfo.id() );
 
@@ -730,10 +1465,11 @@ public class Inspector extends JavaService {
 
 		ValueVector interfaces = result.getChildren( PortInfoType.INTERFACE );
 
-		portInfo.getInterfaceList().forEach( i -> interfaces.add( buildInterfaceInfo( i, referredTypesSet ) ) );
+		portInfo.getInterfaceList()
+			.forEach( i -> interfaces.add( buildInterfaceInfo( i, fragments, referredTypesSet ) ) );
 
 		getAggregatedInterfaces( portInfo, inspector )
-			.forEach( i -> interfaces.add( buildInterfaceInfo( i, referredTypesSet ) ) );
+			.forEach( i -> interfaces.add( buildInterfaceInfo( i, fragments, referredTypesSet ) ) );
 
 		return result;
 	}
@@ -754,7 +1490,8 @@ public class Inspector extends JavaService {
 		return returnList;
 	}
 
-	private static Value buildPortInfo( OutputPortInfo portInfo, Set< String > referredTypesSet ) {
+	private static Value buildPortInfo( OutputPortInfo portInfo, ValueFragments fragments,
+		Set< String > referredTypesSet ) {
 		Value result = Value.create();
 		result.setFirstChild( PortInfoType.NAME, portInfo.id() );
 
@@ -768,20 +1505,27 @@ public class Inspector extends JavaService {
 
 		ValueVector interfaces = result.getChildren( PortInfoType.INTERFACE );
 
-		portInfo.getInterfaceList().forEach( i -> interfaces.add( buildInterfaceInfo( i, referredTypesSet ) ) );
+		portInfo.getInterfaceList()
+			.forEach( i -> interfaces.add( buildInterfaceInfo( i, fragments, referredTypesSet ) ) );
 
 		return result;
 	}
 
-	private static Value buildInterfaceInfo( InterfaceDefinition interfaceDefinition, Set< String > referredTypesSet ) {
-		Value result = Value.create();
-		result.setFirstChild( InterfaceInfoType.NAME, interfaceDefinition.name() );
-		interfaceDefinition.getDocumentation()
-			.ifPresent( doc -> result.setFirstChild( InterfaceInfoType.DOCUMENTATION, doc ) );
-		ValueVector operations = result.getChildren( InterfaceInfoType.OPERATION );
-		interfaceDefinition.operationsMap().entrySet()
-			.forEach( o -> operations.add( buildOperationInfo( o.getValue(), referredTypesSet ) ) );
-		return result;
+	private static Value buildInterfaceInfo( InterfaceDefinition interfaceDefinition, ValueFragments fragments,
+		Set< String > referredTypesSet ) {
+		ValueFragments.InterfaceFragment fragment = fragments.interfaceInfo( interfaceDefinition, i -> {
+			Value result = Value.create();
+			Set< String > referredTypes = new HashSet<>();
+			result.setFirstChild( InterfaceInfoType.NAME, i.name() );
+			i.getDocumentation()
+				.ifPresent( doc -> result.setFirstChild( InterfaceInfoType.DOCUMENTATION, doc ) );
+			ValueVector operations = result.getChildren( InterfaceInfoType.OPERATION );
+			i.operationsMap().entrySet()
+				.forEach( o -> operations.add( buildOperationInfo( o.getValue(), referredTypes ) ) );
+			return new ValueFragments.InterfaceFragment( result, referredTypes );
+		} );
+		referredTypesSet.addAll( fragment.referredTypes() );
+		return fragment.value();
 	}
 
 	private static Value buildOperationInfo( OperationDeclaration operationDeclaration,
@@ -814,7 +1558,17 @@ public class Inspector extends JavaService {
 		return result;
 	}
 
-	private static Value buildTypeInfo( TypeDefinition t ) {
+	private static Value buildTypeInfo( TypeDefinition type, ValueFragments fragments ) {
+		return fragments.typeInfo( type, t -> buildTypeInfo( t, fragments, UNLIMITED_DEPTH ) );
+	}
+
+	/**
+	 * @param t the type to describe
+	 * @param fragments the already built Values of the module, used for the subtypes if the depth is unlimited
+	 * @param depth how many levels of fields are described, a negative depth describes all of them
+	 * @return the TypeInfo of the type, an inline type whose fields are not described has truncated set to true
+	 */
+	private static Value buildTypeInfo( TypeDefinition t, ValueFragments fragments, int depth ) {
 		Value result = Value.create();
 		t.getDocumentation().ifPresent( doc -> result.setFirstChild( TypeInfoType.DOCUMENTATION, doc ) );
 
@@ -822,13 +1576,16 @@ public class Inspector extends JavaService {
 			result.setFirstChild( TypeInfoType.LINKED_TYPE_NAME, ((TypeDefinitionLink) t).linkedTypeName() );
 		} else if( t instanceof TypeChoiceDefinition ) {
 			TypeChoiceDefinition tc = (TypeChoiceDefinition) t;
-			result.getChildren( TypeInfoType.LEFT ).add( buildTypeInfo( tc.left() ) );
-			result.getChildren( TypeInfoType.RIGHT ).add( buildTypeInfo( tc.right() ) );
+			// the sides of a choice are at the same level as the choice
+			result.getChildren( TypeInfoType.LEFT ).add( buildTypeInfoUpTo( tc.left(), fragments, depth ) );
+			result.getChildren( TypeInfoType.RIGHT ).add( buildTypeInfoUpTo( tc.right(), fragments, depth ) );
 		} else if( t instanceof TypeInlineDefinition ) {
 			TypeInlineDefinition ti = (TypeInlineDefinition) t;
 			result.setFirstChild( TypeInfoType.NATIVE_TYPE, ti.basicType().nativeType().id() );
 			result.setFirstChild( TypeInfoType.UNTYPED_FIELDS, ti.untypedSubTypes() );
-			if( ti.hasSubTypes() ) {
+			if( ti.hasSubTypes() && depth == 0 ) {
+				result.setFirstChild( TypeInfoType.TRUNCATED, true );
+			} else if( ti.hasSubTypes() ) {
 				ValueVector fields = result.getChildren( TypeInfoType.FIELDS );
 				ti.subTypes().forEach( entry -> {
 					Value field = Value.create();
@@ -838,7 +1595,7 @@ public class Inspector extends JavaService {
 					range.setFirstChild( FieldType.MIN, entry.getValue().cardinality().min() );
 					range.setFirstChild( FieldType.MAX, entry.getValue().cardinality().max() );
 
-					field.getChildren( FieldType.TYPE ).add( buildTypeInfo( entry.getValue() ) );
+					field.getChildren( FieldType.TYPE ).add( buildTypeInfoUpTo( entry.getValue(), fragments, depth - 1 ) );
 
 					fields.add( field );
 				} );
@@ -846,5 +1603,64 @@ public class Inspector extends JavaService {
 		}
 
 		return result;
-	} 
+	}
+
+	/*
+	 * the Value of a type described entirely is shared with the other responses, the others are built every time
+	 */
+	private static Value buildTypeInfoUpTo( TypeDefinition t, ValueFragments fragments, int depth ) {
+		return depth < 0 ? buildTypeInfo( t, fragments ) : buildTypeInfo( t, fragments, depth );
+	}
+
+	/**
+	 * Writes a type the way it is declared in Jolie, used for showing it to the user, e.g. when hovering
+	 * @param depth how many levels of fields are written, the fields below are written as { ... },
+	 * a negative depth writes all of them
+	 */
+	private static String typeCode( TypeDefinition type, int depth ) {
+		StringBuilder code = new StringBuilder( "type " ).append( type.name() ).append( ": " );
+		appendTypeCode( type, depth, "", code );
+		return code.toString();
+	}
+
+	private static void appendTypeCode( TypeDefinition t, int depth, String indent, StringBuilder code ) {
+		if( t instanceof TypeDefinitionLink ) {
+			code.append( ((TypeDefinitionLink) t).linkedTypeName() );
+		} else if( t instanceof TypeChoiceDefinition ) {
+			TypeChoiceDefinition tc = (TypeChoiceDefinition) t;
+			appendTypeCode( tc.left(), depth, indent, code );
+			code.append( " | " );
+			appendTypeCode( tc.right(), depth, indent, code );
+		} else if( t instanceof TypeInlineDefinition ) {
+			TypeInlineDefinition ti = (TypeInlineDefinition) t;
+			code.append( ti.basicType().nativeType().id() );
+			if( ti.hasSubTypes() && depth == 0 ) {
+				code.append( " { ... }" );
+			} else if( ti.hasSubTypes() ) {
+				code.append( " {\n" );
+				ti.subTypes().forEach( entry -> {
+					code.append( indent ).append( '\t' ).append( entry.getKey() )
+						.append( cardinalityCode( entry.getValue().cardinality().min(),
+							entry.getValue().cardinality().max() ) )
+						.append( ": " );
+					appendTypeCode( entry.getValue(), depth - 1, indent + "\t", code );
+					code.append( '\n' );
+				} );
+				code.append( indent ).append( '}' );
+			} else if( ti.untypedSubTypes() ) {
+				code.append( " { ? }" );
+			}
+		}
+	}
+
+	private static String cardinalityCode( int min, int max ) {
+		if( min == 1 && max == 1 ) {
+			return "";
+		} else if( min == 0 && max == 1 ) {
+			return "?";
+		} else if( min == 0 && max == Integer.MAX_VALUE ) {
+			return "*";
+		}
+		return "[" + min + "," + (max == Integer.MAX_VALUE ? "*" : String.valueOf( max )) + "]";
+	}
 }
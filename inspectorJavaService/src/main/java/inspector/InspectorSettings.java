@@ -0,0 +1,83 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.Locale;
+
+/**
+ * Tuning knobs of the inspector. Every setting can be given as a Java system property
+ * (e.g. -Dinspector.parseCache.maxBytes=...) or as an environment variable with the same name
+ * in upper case and with dots replaced by underscores (e.g. INSPECTOR_PARSECACHE_MAXBYTES).
+ */
+final class InspectorSettings {
+	private InspectorSettings() {}
+
+	/**
+	 * @param name name of the setting, e.g. "inspector.parseCache.maxBytes"
+	 * @param defaultValue value used if the setting is missing or is not a number
+	 * @return the configured value of the setting
+	 */
+	static long getLong( String name, long defaultValue ) {
+		String value = get( name );
+		if( value == null ) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong( value.trim() );
+		} catch( NumberFormatException e ) {
+			return defaultValue;
+		}
+	}
+
+	static int getInt( String name, int defaultValue ) {
+		return (int) getLong( name, defaultValue );
+	}
+
+	/**
+	 * @param name name of the setting, e.g. "inspector.symbolSnapshot.enabled"
+	 * @param defaultValue value used if the setting is missing
+	 * @return true if the setting is "true" (in any case), false for any other value
+	 */
+	static boolean getBoolean( String name, boolean defaultValue ) {
+		String value = get( name );
+		return value == null ? defaultValue : Boolean.parseBoolean( value.trim() );
+	}
+
+	/**
+	 * @param name name of the setting, e.g. "inspector.log.level"
+	 * @param defaultValue value used if the setting is missing or blank
+	 * @return the trimmed value of the setting
+	 */
+	static String getString( String name, String defaultValue ) {
+		String value = get( name );
+		return value == null || value.isBlank() ? defaultValue : value.trim();
+	}
+
+	private static String get( String name ) {
+		String value = System.getProperty( name );
+		if( value == null ) {
+			value = System.getenv( name.toUpperCase( Locale.ROOT ).replace( '.', '_' ) );
+		}
+		return value;
+	}
+}
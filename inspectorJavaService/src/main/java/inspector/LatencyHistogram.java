@@ -0,0 +1,103 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds, in the style of HdrHistogram: every power of two is split in
+ * SUB_BUCKETS linear buckets, so a recorded value is known within about 6% whatever its magnitude,
+ * and recording is a single atomic increment without any allocation.
+ */
+final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// values below SUB_BUCKETS get one bucket each, then SUB_BUCKETS buckets for each power of two up to 2^63
+	private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	void record( long micros ) {
+		long value = Math.max( 0, micros );
+		counts.incrementAndGet( bucketOf( value ) );
+		count.incrementAndGet();
+		sum.addAndGet( value );
+		max.accumulateAndGet( value, Math::max );
+	}
+
+	long count() {
+		return count.get();
+	}
+
+	double mean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	long max() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the highest value of the bucket containing the given percentile, 0 if nothing was recorded
+	 */
+	long percentile( double percentile ) {
+		long total = count.get();
+		if( total == 0 ) {
+			return 0;
+		}
+		long rank = Math.max( 1, (long) Math.ceil( total * percentile / 100 ) );
+		long seen = 0;
+		for( int bucket = 0; bucket < BUCKETS; bucket++ ) {
+			seen += counts.get( bucket );
+			if( seen >= rank ) {
+				return Math.min( highestValueOf( bucket ), max.get() );
+			}
+		}
+		return max.get();
+	}
+
+	private static int bucketOf( long value ) {
+		if( value < SUB_BUCKETS ) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros( value );
+		int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long highestValueOf( int bucket ) {
+		if( bucket < SUB_BUCKETS ) {
+			return bucket;
+		}
+		int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		long lowest = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+		return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
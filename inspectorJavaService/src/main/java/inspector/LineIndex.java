@@ -0,0 +1,145 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The start offsets of the lines of a version of a source, so that positions can be turned into offsets
+ * and back in O(log n) without splitting the text.
+ * Lines end with "\n", "\r\n" or "\r", like for String.lines().
+ * The indexes of the most recently used versions are cached, so looking up many positions
+ * in the same version, e.g. while renaming, only scans the source once.
+ */
+final class LineIndex {
+	private static final int CACHED_VERSIONS = 64;
+
+	private static final Map< String, LineIndex > CACHE = new LinkedHashMap< String, LineIndex >( 16, 0.75f, true ) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry< String, LineIndex > eldest ) {
+			return size() > CACHED_VERSIONS;
+		}
+	};
+
+	private final String source;
+	private final int[] lineStarts;
+
+	private LineIndex( String source, int[] lineStarts ) {
+		this.source = source;
+		this.lineStarts = lineStarts;
+	}
+
+	/**
+	 * @param source a version of a source
+	 * @return the index of the version, computed only if it is not cached
+	 */
+	static LineIndex of( String source ) {
+		synchronized( CACHE ) {
+			LineIndex index = CACHE.get( source );
+			if( index != null ) {
+				return index;
+			}
+		}
+		LineIndex index = new LineIndex( source, computeLineStarts( source ) );
+		synchronized( CACHE ) {
+			CACHE.put( source, index );
+		}
+		return index;
+	}
+
+	String source() {
+		return source;
+	}
+
+	int lineCount() {
+		return lineStarts.length;
+	}
+
+	/**
+	 * @param line a zero based line number, which must exist
+	 * @return the offset of the first character of the line
+	 */
+	int lineStart( int line ) {
+		return lineStarts[ line ];
+	}
+
+	/**
+	 * @param line a zero based line number, which must exist
+	 * @return the offset after the last character of the line, excluding the line terminator
+	 */
+	int lineEnd( int line ) {
+		if( line + 1 == lineStarts.length ) {
+			return source.length();
+		}
+		int end = lineStarts[ line + 1 ] - 1;
+		if( end > lineStarts[ line ] && source.charAt( end ) == '\n' && source.charAt( end - 1 ) == '\r' ) {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * @param offset an offset in the source
+	 * @return the zero based line containing the offset
+	 */
+	int lineOf( int offset ) {
+		int index = Arrays.binarySearch( lineStarts, offset );
+		return index >= 0 ? index : -index - 2;
+	}
+
+	/**
+	 * @param line a zero based line number
+	 * @param character a zero based character in the line
+	 * @param length the number of characters
+	 * @return the text at the position, or the empty string if the line is not long enough
+	 */
+	String textAt( int line, int character, int length ) {
+		if( line < 0 || line >= lineStarts.length || character < 0 ) {
+			return "";
+		}
+		int start = lineStarts[ line ] + character;
+		if( start + length > lineEnd( line ) ) {
+			return "";
+		}
+		return source.substring( start, start + length );
+	}
+
+	private static int[] computeLineStarts( String source ) {
+		int[] starts = new int[ 16 ];
+		int count = 1;
+		for( int i = 0; i < source.length(); i++ ) {
+			char c = source.charAt( i );
+			if( c == '\n' || (c == '\r' && (i + 1 == source.length() || source.charAt( i + 1 ) != '\n')) ) {
+				if( count == starts.length ) {
+					starts = Arrays.copyOf( starts, count * 2 );
+				}
+				starts[ count++ ] = i + 1;
+			}
+		}
+		return Arrays.copyOf( starts, count );
+	}
+}
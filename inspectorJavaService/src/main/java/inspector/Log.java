@@ -0,0 +1,116 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Leveled logger of the inspector. Messages are written to standard output by a background thread,
+ * so an operation never waits for the console, and a message whose level is disabled is never built
+ * when it is given as a Supplier.
+ * The level is configured through the "inspector.log.level" setting (error, warn, info or debug, default info).
+ * If the queue is full the message is dropped, the number of dropped messages is part of the metrics.
+ */
+final class Log {
+	enum Level {
+		ERROR, WARN, INFO, DEBUG
+	}
+
+	private static final int QUEUE_CAPACITY = 8192;
+
+	private static final Level LEVEL = parseLevel( InspectorSettings.getString( "inspector.log.level", "info" ) );
+	private static final AtomicLong DROPPED = new AtomicLong();
+
+	private Log() {}
+
+	static boolean isEnabled( Level level ) {
+		return level.compareTo( LEVEL ) <= 0;
+	}
+
+	static void error( String message ) {
+		log( Level.ERROR, message );
+	}
+
+	static void warn( String message ) {
+		log( Level.WARN, message );
+	}
+
+	static void info( String message ) {
+		log( Level.INFO, message );
+	}
+
+	static void debug( String message ) {
+		log( Level.DEBUG, message );
+	}
+
+	static void debug( Supplier< String > message ) {
+		if( isEnabled( Level.DEBUG ) ) {
+			log( Level.DEBUG, message.get() );
+		}
+	}
+
+	static void log( Level level, String message ) {
+		if( isEnabled( level ) && !Writer.QUEUE.offer( "[" + level + "] " + message ) ) {
+			DROPPED.incrementAndGet();
+		}
+	}
+
+	static long dropped() {
+		return DROPPED.get();
+	}
+
+	private static Level parseLevel( String level ) {
+		try {
+			return Level.valueOf( level.toUpperCase( Locale.ROOT ) );
+		} catch( IllegalArgumentException e ) {
+			return Level.INFO;
+		}
+	}
+
+	/*
+	 * the writer thread is only started when the first enabled message is logged
+	 */
+	private static final class Writer {
+		private static final BlockingQueue< String > QUEUE = new ArrayBlockingQueue<>( QUEUE_CAPACITY );
+
+		static {
+			Thread writer = new Thread( Writer::run, "inspector-log" );
+			writer.setDaemon( true );
+			writer.start();
+		}
+
+		private static void run() {
+			try {
+				while( true ) {
+					System.out.println( QUEUE.take() );
+				}
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
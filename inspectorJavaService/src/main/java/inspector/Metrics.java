@@ -0,0 +1,173 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the hot paths of the inspector: a latency histogram per operation, how many times each module was
+ * parsed, how many files each workspace operation went through and how many bytes were read from disk.
+ * They are returned by the getMetrics operation of the Inspector. Operations and parses are also emitted as
+ * JFR events (inspector.Operation and inspector.Parse), which cost nothing unless a recording is enabled.
+ */
+final class Metrics {
+	private static final Metrics INSTANCE = new Metrics();
+
+	private final Map< String, LatencyHistogram > operations = new ConcurrentHashMap<>();
+	private final Map< URI, LongAdder > parses = new ConcurrentHashMap<>();
+	private final Map< String, LongAdder > filesScanned = new ConcurrentHashMap<>();
+	private final LongAdder bytesRead = new LongAdder();
+
+	private Metrics() {}
+
+	static Metrics instance() {
+		return INSTANCE;
+	}
+
+	@FunctionalInterface
+	interface Operation< T, E extends Exception > {
+		T run() throws E;
+	}
+
+	/**
+	 * Runs an operation, recording its latency in the histogram of the operation
+	 * @param name name of the operation, e.g. "inspectFile"
+	 * @param operation the body of the operation
+	 * @return the result of the operation
+	 * @throws E the exception of the operation, which is recorded as well
+	 */
+	static < T, E extends Exception > T time( String name, Operation< T, E > operation ) throws E {
+		OperationEvent event = new OperationEvent();
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			return operation.run();
+		} finally {
+			INSTANCE.operations.computeIfAbsent( name, n -> new LatencyHistogram() )
+				.record( (System.nanoTime() - start) / 1000 );
+			event.end();
+			if( event.shouldCommit() ) {
+				event.operation = name;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Called every time a module is actually parsed, i.e. when it was not found in the caches
+	 * @param uri the uri of the module
+	 * @param view what the module was parsed for
+	 * @param startNanos System.nanoTime() when the parse started
+	 */
+	void parsed( URI uri, String view, long startNanos ) {
+		parses.computeIfAbsent( uri, u -> new LongAdder() ).increment();
+		ParseEvent event = new ParseEvent();
+		if( event.shouldCommit() ) {
+			event.uri = uri.toString();
+			event.view = view;
+			event.micros = (System.nanoTime() - startNanos) / 1000;
+			event.commit();
+		}
+	}
+
+	void filesScanned( String operation, int files ) {
+		filesScanned.computeIfAbsent( operation, o -> new LongAdder() ).add( files );
+	}
+
+	/**
+	 * Reads a file, counting the bytes read
+	 */
+	static byte[] readAllBytes( Path path ) throws IOException {
+		byte[] content = Files.readAllBytes( path );
+		INSTANCE.bytesRead.add( content.length );
+		return content;
+	}
+
+	/**
+	 * Reads a file as UTF-8, counting the bytes read
+	 */
+	static String readString( Path path ) throws IOException {
+		return new String( readAllBytes( path ), StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * @return the histograms by operation name, sorted by name
+	 */
+	Map< String, LatencyHistogram > operations() {
+		return new TreeMap<>( operations );
+	}
+
+	Map< URI, Long > parses() {
+		Map< URI, Long > result = new TreeMap<>();
+		parses.forEach( ( uri, count ) -> result.put( uri, count.sum() ) );
+		return result;
+	}
+
+	Map< String, Long > filesScanned() {
+		Map< String, Long > result = new TreeMap<>();
+		filesScanned.forEach( ( operation, count ) -> result.put( operation, count.sum() ) );
+		return result;
+	}
+
+	long bytesRead() {
+		return bytesRead.sum();
+	}
+
+	@Name( "inspector.Operation" )
+	@Label( "Inspector Operation" )
+	@Category( "Jolie Language Server" )
+	@Description( "An operation of the inspector called by the language server" )
+	static final class OperationEvent extends Event {
+		@Label( "Operation" )
+		String operation;
+	}
+
+	@Name( "inspector.Parse" )
+	@Label( "Module Parse" )
+	@Category( "Jolie Language Server" )
+	@Description( "A module that was parsed because it was not found in the caches" )
+	static final class ParseEvent extends Event {
+		@Label( "URI" )
+		String uri;
+
+		@Label( "View" )
+		String view;
+
+		@Label( "Duration (us)" )
+		long micros;
+	}
+}
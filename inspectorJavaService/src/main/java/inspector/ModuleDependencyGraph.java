@@ -0,0 +1,178 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Which modules import from which, built from the imported symbols of each module summary.
+ * The edges of a module are replaced whenever its summary changes, so the graph can be updated one module at a time.
+ * All modules are identified by their normalized file URI.
+ */
+final class ModuleDependencyGraph {
+	// the module of an import statement, e.g. "..common.types" in "from ..common.types import T"
+	private static final Pattern IMPORT = Pattern.compile( "\\bfrom\\s+(\\.*\\w+(?:\\.\\w+)*)\\s+import\\b" );
+
+	// module -> modules it imports from
+	private final Map< URI, Set< URI > > imports = new HashMap<>();
+	// module -> modules importing from it
+	private final Map< URI, Set< URI > > importers = new HashMap<>();
+
+	/**
+	 * Replaces the import edges of the module with the ones found in its summary
+	 * @param summary the new summary of the module
+	 */
+	synchronized void update( ModuleSummary summary ) {
+		URI module = uriOf( summary.path() );
+		removeEdges( module );
+		Set< URI > imported = new HashSet<>();
+		for( ModuleSummary.Symbol symbol : summary.symbols() ) {
+			if( symbol.isImported() ) {
+				imported.add( URI.create( symbol.originUri() ) );
+			}
+		}
+		imported.remove( module );
+		if( !imported.isEmpty() ) {
+			imports.put( module, imported );
+			for( URI importedModule : imported ) {
+				importers.computeIfAbsent( importedModule, m -> new HashSet<>() ).add( module );
+			}
+		}
+	}
+
+	/**
+	 * Adds import edges to a module that does not compile, found lexically in its source, see lexicalImports.
+	 * The edges it had are kept, as the broken source might miss some of its imports, until a summary replaces them
+	 * @param module the normalized uri of the module
+	 * @param imported the modules it might import from
+	 */
+	synchronized void addImports( URI module, Set< URI > imported ) {
+		for( URI importedModule : imported ) {
+			if( !importedModule.equals( module ) ) {
+				imports.computeIfAbsent( module, m -> new HashSet<>() ).add( importedModule );
+				importers.computeIfAbsent( importedModule, m -> new HashSet<>() ).add( module );
+			}
+		}
+	}
+
+	/**
+	 * Finds the modules a source imports from without parsing it, for modules that do not compile and for unsaved sources.
+	 * A relative import is looked up from the directory of the module, an absolute one from the directory of the module,
+	 * the root of the workspace and the include paths, so a module might be found in more than one place
+	 * @param module the file of the module
+	 * @param source the source of the module
+	 * @param root the root of the workspace
+	 * @param includePaths the include paths used to parse the module
+	 * @return the normalized uris of the existing modules the source might import from
+	 */
+	static Set< URI > lexicalImports( File module, String source, Path root, String[] includePaths ) {
+		Set< URI > result = new HashSet<>();
+		Path directory = module.getAbsoluteFile().toPath().getParent();
+		Matcher matcher = IMPORT.matcher( source );
+		while( matcher.find() ) {
+			String target = matcher.group( 1 );
+			List< Path > lookupDirectories = new ArrayList<>();
+			if( target.startsWith( "." ) ) {
+				Path base = directory;
+				int dots = 1;
+				while( target.charAt( dots ) == '.' && base != null ) {
+					base = base.getParent();
+					dots++;
+				}
+				if( base == null ) {
+					continue;
+				}
+				lookupDirectories.add( base );
+				target = target.substring( dots );
+			} else {
+				lookupDirectories.add( directory );
+				lookupDirectories.add( root );
+				for( String includePath : includePaths ) {
+					lookupDirectories.add( new File( includePath ).getAbsoluteFile().toPath() );
+				}
+			}
+			String relativePath = target.replace( '.', File.separatorChar );
+			for( Path lookupDirectory : lookupDirectories ) {
+				for( Path candidate : List.of( lookupDirectory.resolve( relativePath + ".ol" ),
+					lookupDirectory.resolve( relativePath ).resolve( "main.ol" ) ) ) {
+					File file = candidate.toFile();
+					if( file.isFile() ) {
+						result.add( file.getAbsoluteFile().toURI().normalize() );
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param path the path of the module that was deleted
+	 */
+	synchronized void remove( String path ) {
+		removeEdges( uriOf( path ) );
+	}
+
+	/**
+	 * @param module the normalized uri of a module
+	 * @return all modules importing from the module, directly or through other modules
+	 */
+	synchronized Set< URI > transitiveImporters( URI module ) {
+		Set< URI > visited = new HashSet<>();
+		Deque< URI > toVisit = new ArrayDeque<>();
+		toVisit.add( module );
+		while( !toVisit.isEmpty() ) {
+			for( URI importer : importers.getOrDefault( toVisit.poll(), Collections.emptySet() ) ) {
+				if( visited.add( importer ) ) {
+					toVisit.add( importer );
+				}
+			}
+		}
+		visited.remove( module );
+		return visited;
+	}
+
+	static URI uriOf( String path ) {
+		return new File( path ).getAbsoluteFile().toURI().normalize();
+	}
+
+	private void removeEdges( URI module ) {
+		Set< URI > oldImports = imports.remove( module );
+		if( oldImports == null ) {
+			return;
+		}
+		for( URI importedModule : oldImports ) {
+			Set< URI > importersOfModule = importers.get( importedModule );
+			if( importersOfModule != null ) {
+				importersOfModule.remove( module );
+				if( importersOfModule.isEmpty() ) {
+					importers.remove( importedModule );
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.lang.parse.ast.ImportableSymbol;
+import jolie.lang.parse.ast.InterfaceDefinition;
+import jolie.lang.parse.ast.ServiceNode;
+import jolie.lang.parse.ast.types.TypeDefinition;
+import jolie.lang.parse.context.ParsingContext;
+import jolie.lang.parse.module.ImportedSymbolInfo;
+import jolie.lang.parse.module.LocalSymbolInfo;
+import jolie.lang.parse.module.SymbolTable;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * The symbols of one module, extracted from its symbol table.
+ * A summary only holds plain data, so it can be kept around after the parse result is gone.
+ */
+final class ModuleSummary {
+	/**
+	 * What kind of declaration a symbol refers to
+	 */
+	enum Kind {
+		SERVICE, INTERFACE, TYPE, UNKNOWN;
+
+		static Kind of( ImportableSymbol node ) {
+			if( node instanceof ServiceNode ) {
+				return SERVICE;
+			} else if( node instanceof InterfaceDefinition ) {
+				return INTERFACE;
+			} else if( node instanceof TypeDefinition ) {
+				return TYPE;
+			}
+			return UNKNOWN;
+		}
+
+		/**
+		 * @return the SymbolKind of the LSP for the symbol: Class for services, Interface for interfaces,
+		 * Struct for types and Variable for the rest
+		 */
+		int lspSymbolKind() {
+			switch( this ) {
+			case SERVICE:
+				return 5;
+			case INTERFACE:
+				return 11;
+			case TYPE:
+				return 23;
+			default:
+				return 13;
+			}
+		}
+	}
+
+	/**
+	 * A symbol declared in, or imported into, the module
+	 */
+	static final class Symbol {
+		private final String name;
+		private final Kind kind;
+		private final int line;
+		private final int column;
+		// only set for imported symbols
+		private final String originUri;
+		private final String originalName;
+
+		Symbol( String name, Kind kind, int line, int column, String originUri, String originalName ) {
+			this.name = name;
+			this.kind = kind;
+			this.line = line;
+			this.column = column;
+			this.originUri = originUri;
+			this.originalName = originalName;
+		}
+
+		String name() {
+			return name;
+		}
+
+		Kind kind() {
+			return kind;
+		}
+
+		int line() {
+			return line;
+		}
+
+		int column() {
+			return column;
+		}
+
+		boolean isImported() {
+			return originUri != null;
+		}
+
+		/**
+		 * @return the normalized uri of the module the symbol is imported from, or null for local symbols
+		 */
+		String originUri() {
+			return originUri;
+		}
+
+		/**
+		 * @return the name of the symbol in the module it is imported from, or null for local symbols
+		 */
+		String originalName() {
+			return originalName;
+		}
+	}
+
+	/**
+	 * A place in the module where one of its symbols is used or declared
+	 */
+	static final class Occurrence {
+		private final String name;
+		private final int line;
+		private final int startCharacter;
+		private final int endCharacter;
+		private final boolean declaration;
+
+		Occurrence( String name, int line, int startCharacter, int endCharacter, boolean declaration ) {
+			this.name = name;
+			this.line = line;
+			this.startCharacter = startCharacter;
+			this.endCharacter = endCharacter;
+			this.declaration = declaration;
+		}
+
+		/**
+		 * @return the name of the symbol as it is written in the module
+		 */
+		String name() {
+			return name;
+		}
+
+		int line() {
+			return line;
+		}
+
+		int startCharacter() {
+			return startCharacter;
+		}
+
+		int endCharacter() {
+			return endCharacter;
+		}
+
+		boolean isDeclaration() {
+			return declaration;
+		}
+	}
+
+	private final String path;
+	private final List< Symbol > symbols;
+	private final List< Occurrence > occurrences;
+
+	ModuleSummary( String path, List< Symbol > symbols ) {
+		this( path, symbols, Collections.emptyList() );
+	}
+
+	ModuleSummary( String path, List< Symbol > symbols, List< Occurrence > occurrences ) {
+		this.path = path;
+		this.symbols = Collections.unmodifiableList( symbols );
+		this.occurrences = Collections.unmodifiableList( occurrences );
+	}
+
+	/**
+	 * @param path the path of the module, as used in the responses of the Inspector
+	 * @param symbolTable the symbol table of the module
+	 * @return the summary of the symbol table
+	 */
+	static ModuleSummary of( String path, SymbolTable symbolTable ) {
+		List< Symbol > symbols = new ArrayList<>();
+		for( ImportedSymbolInfo importedSymbol : symbolTable.importedSymbolInfos() ) {
+			ParsingContext context = importedSymbol.context();
+			symbols.add( new Symbol( importedSymbol.name(), Kind.of( importedSymbol.node() ),
+				context.startLine(), context.startColumn(),
+				importedSymbol.node().context().source().normalize().toString(),
+				importedSymbol.originalSymbolName() ) );
+		}
+		for( LocalSymbolInfo localSymbol : symbolTable.localSymbols() ) {
+			ParsingContext context = localSymbol.context();
+			symbols.add( new Symbol( localSymbol.name(), Kind.of( localSymbol.node() ),
+				context.startLine(), context.startColumn(), null, null ) );
+		}
+		return new ModuleSummary( path, symbols );
+	}
+
+	/**
+	 * @param path the path of the module, as used in the responses of the Inspector
+	 * @param symbolTable the symbol table of the module
+	 * @param source the source the symbol table was made from
+	 * @return the summary of the symbol table, with the occurrences of its symbols in the source
+	 */
+	static ModuleSummary of( String path, SymbolTable symbolTable, String source ) {
+		List< Symbol > symbols = of( path, symbolTable ).symbols();
+		Set< String > names = new HashSet<>();
+		symbols.forEach( symbol -> names.add( symbol.name() ) );
+		List< Occurrence > occurrences = new ArrayList<>();
+		for( IdentifierLexer.Token token : IdentifierLexer.references( source, names ) ) {
+			occurrences.add( new Occurrence( token.text(), token.line(), token.startCharacter(), token.endCharacter(),
+				token.isDeclaration() ) );
+		}
+		return new ModuleSummary( path, new ArrayList<>( symbols ), occurrences );
+	}
+
+	String path() {
+		return path;
+	}
+
+	List< Symbol > symbols() {
+		return symbols;
+	}
+
+	List< Occurrence > occurrences() {
+		return occurrences;
+	}
+
+	/**
+	 * @param name a symbol as it is written in the module
+	 * @return the key of the declaration the symbol refers to, following its import,
+	 * or null if the module has no such symbol
+	 */
+	String declarationKey( String name ) {
+		for( Symbol symbol : symbols ) {
+			if( symbol.name().equals( name ) ) {
+				return symbol.isImported()
+					? declarationKey( modulePathOf( symbol.originUri() ), symbol.originalName() )
+					: declarationKey( path, name );
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return a key identifying a symbol declared in a module, the same in every module using it
+	 */
+	static String declarationKey( String modulePath, String name ) {
+		return modulePath + "#" + name;
+	}
+
+	// the uris of the parser are turned into paths like the ones of the workspace index
+	private static String modulePathOf( String uri ) {
+		try {
+			URI parsed = URI.create( uri );
+			if( "file".equals( parsed.getScheme() ) ) {
+				return Paths.get( parsed ).normalize().toString();
+			}
+		} catch( IllegalArgumentException e ) {
+			// not a file uri, e.g. a module inside a jar
+		}
+		return uri;
+	}
+}
@@ -0,0 +1,104 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.cli.CommandLineException;
+import jolie.lang.CodeCheckException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+
+/**
+ * The symbols declared in the modules that are imported from, used for completing import statements.
+ * Each module is parsed once per content version, and its local symbols are kept in a sorted map
+ * so that the symbols starting with what the user typed are a range of the map.
+ * At most "inspector.moduleSymbols.maxModules" modules are kept, the least recently used are dropped first.
+ */
+final class ModuleSymbolCache {
+	private static final class Module {
+		private final ParseCache.FileStamp stamp;
+		private final NavigableMap< String, ModuleSummary.Symbol > symbols;
+
+		private Module( ParseCache.FileStamp stamp, NavigableMap< String, ModuleSummary.Symbol > symbols ) {
+			this.stamp = stamp;
+			this.symbols = symbols;
+		}
+	}
+
+	private static final int MAX_MODULES = Math.max( 1, InspectorSettings.getInt( "inspector.moduleSymbols.maxModules", 256 ) );
+
+	private static final ModuleSymbolCache INSTANCE = new ModuleSymbolCache();
+
+	private final Map< URI, Module > modules = new LinkedHashMap< URI, Module >( 16, 0.75f, true ) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry< URI, Module > eldest ) {
+			return size() > MAX_MODULES;
+		}
+	};
+
+	private ModuleSymbolCache() {}
+
+	static ModuleSymbolCache instance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * If the module does not compile, the symbols of its last version that did are used
+	 * @param file the module to look in
+	 * @param prefix the start of the symbol names to look for
+	 * @param loader parses the module when it is not cached or it changed
+	 * @return the symbols declared in the module starting with the prefix, ordered by name
+	 */
+	List< ModuleSummary.Symbol > symbolsWithPrefix( File file, String prefix, WorkspaceIndex.ModuleLoader loader ) {
+		URI uri = file.getAbsoluteFile().toURI().normalize();
+		Module module;
+		synchronized( modules ) {
+			module = modules.get( uri );
+		}
+		if( module == null || !module.stamp.isUnchanged( uri ) ) {
+			// the stamp is taken before parsing, so a change during the parse is seen by the next lookup
+			ParseCache.FileStamp stamp = ParseCache.FileStamp.of( uri );
+			try {
+				NavigableMap< String, ModuleSummary.Symbol > symbols = new TreeMap<>();
+				for( ModuleSummary.Symbol symbol : loader.load( file ).symbols() ) {
+					if( !symbol.isImported() ) {
+						symbols.put( symbol.name(), symbol );
+					}
+				}
+				module = new Module( stamp, symbols );
+				synchronized( modules ) {
+					modules.put( uri, module );
+				}
+			} catch( CommandLineException | IOException | CodeCheckException ex ) {
+				if( module == null ) {
+					return Collections.emptyList();
+				}
+			}
+		}
+		return new ArrayList<>( module.symbols.subMap( prefix, true, prefix + Character.MAX_VALUE, false ).values() );
+	}
+}
@@ -0,0 +1,88 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.*;
+
+/**
+ * Maps every declared symbol of a workspace to the places where it occurs, in its own module and in
+ * the modules importing it. Symbols are identified by their declaration key (see ModuleSummary.declarationKey),
+ * so an aliased import still points to the declaration it came from.
+ * A module is replaced as a whole when it changes, which only touches the keys it occurs in.
+ * The index is not thread safe, WorkspaceIndex guards it.
+ */
+final class OccurrenceIndex {
+	// declaration key -> module path -> occurrences in the module
+	private final Map< String, Map< String, List< ModuleSummary.Occurrence > > > occurrencesByKey = new HashMap<>();
+	// module path -> declaration keys occurring in the module
+	private final Map< String, Set< String > > keysByModule = new HashMap<>();
+
+	void add( ModuleSummary module ) {
+		Map< String, List< ModuleSummary.Occurrence > > byKey = group( module );
+		byKey.forEach( ( key, occurrences ) -> occurrencesByKey.computeIfAbsent( key, k -> new HashMap<>() )
+			.put( module.path(), occurrences ) );
+		if( !byKey.isEmpty() ) {
+			keysByModule.put( module.path(), new HashSet<>( byKey.keySet() ) );
+		}
+	}
+
+	void remove( ModuleSummary module ) {
+		Set< String > keys = keysByModule.remove( module.path() );
+		if( keys == null ) {
+			return;
+		}
+		for( String key : keys ) {
+			Map< String, List< ModuleSummary.Occurrence > > modules = occurrencesByKey.get( key );
+			if( modules != null ) {
+				modules.remove( module.path() );
+				if( modules.isEmpty() ) {
+					occurrencesByKey.remove( key );
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param declarationKey the key of a declared symbol
+	 * @return the occurrences of the symbol grouped by module path, ordered by path
+	 */
+	SortedMap< String, List< ModuleSummary.Occurrence > > references( String declarationKey ) {
+		Map< String, List< ModuleSummary.Occurrence > > modules = occurrencesByKey.get( declarationKey );
+		return modules == null ? new TreeMap<>() : new TreeMap<>( modules );
+	}
+
+	/**
+	 * @param module the summary of a module
+	 * @return the occurrences of the module grouped by the declaration they refer to
+	 */
+	static Map< String, List< ModuleSummary.Occurrence > > group( ModuleSummary module ) {
+		Map< String, List< ModuleSummary.Occurrence > > byKey = new HashMap<>();
+		for( ModuleSummary.Occurrence occurrence : module.occurrences() ) {
+			String key = module.declarationKey( occurrence.name() );
+			if( key != null ) {
+				byKey.computeIfAbsent( key, k -> new ArrayList<>() ).add( occurrence );
+			}
+		}
+		return byKey;
+	}
+}
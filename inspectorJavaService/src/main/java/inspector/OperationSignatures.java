@@ -0,0 +1,221 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.lang.parse.ast.InputPortInfo;
+import jolie.lang.parse.ast.InterfaceDefinition;
+import jolie.lang.parse.ast.OneWayOperationDeclaration;
+import jolie.lang.parse.ast.OperationDeclaration;
+import jolie.lang.parse.ast.OutputPortInfo;
+import jolie.lang.parse.ast.PortInfo;
+import jolie.lang.parse.ast.RequestResponseOperationDeclaration;
+import jolie.lang.parse.util.ProgramInspector;
+
+import java.util.*;
+
+/**
+ * The signatures of the operations of a module, by the name an operation is used with: "op" for the operations
+ * of the input ports, as they appear in an input statement, and "op@Port" for the operations of the output ports,
+ * as they appear in a solicit-response or a notification.
+ * The index is built once for every version of a module, see InspectionResult, so looking up an operation does
+ * not depend on the number of ports and interfaces of the module.
+ * The index of the last version that compiled is kept for every document, so that the operations can still be
+ * looked up while the document is being edited and does not compile.
+ */
+final class OperationSignatures {
+	private static final int MAX_DOCUMENTS = 64;
+
+	// document -> the signatures of its last version that compiled
+	private static final Map< String, OperationSignatures > LAST_COMPILED = new LinkedHashMap<>( 16, 0.75f, true ) {
+		@Override
+		protected boolean removeEldestEntry( Map.Entry< String, OperationSignatures > eldest ) {
+			return size() > MAX_DOCUMENTS;
+		}
+	};
+
+	/**
+	 * An operation of a port, with the names of the types it uses
+	 */
+	static final class Signature {
+		private final String operation;
+		private final String port;
+		private final boolean inputPort;
+		private final String interfaceName;
+		private final String requestType;
+		// null for a OneWay operation
+		private final String responseType;
+		// name of the fault -> name of its type
+		private final Map< String, String > faults;
+		private final String documentation;
+
+		private Signature( String operation, String port, boolean inputPort, String interfaceName, String requestType,
+			String responseType, Map< String, String > faults, String documentation ) {
+			this.operation = operation;
+			this.port = port;
+			this.inputPort = inputPort;
+			this.interfaceName = interfaceName;
+			this.requestType = requestType;
+			this.responseType = responseType;
+			this.faults = faults;
+			this.documentation = documentation;
+		}
+
+		String operation() {
+			return operation;
+		}
+
+		String port() {
+			return port;
+		}
+
+		boolean isInputPort() {
+			return inputPort;
+		}
+
+		String interfaceName() {
+			return interfaceName;
+		}
+
+		String requestType() {
+			return requestType;
+		}
+
+		String responseType() {
+			return responseType;
+		}
+
+		Map< String, String > faults() {
+			return faults;
+		}
+
+		String documentation() {
+			return documentation;
+		}
+
+		/**
+		 * @return the operation as it is used, e.g. "op@Port( Request )( Response )" or "op( Request )"
+		 */
+		String label() {
+			StringBuilder label = new StringBuilder( operation );
+			if( !inputPort ) {
+				label.append( '@' ).append( port );
+			}
+			label.append( "( " ).append( requestType ).append( " )" );
+			if( responseType != null ) {
+				label.append( "( " ).append( responseType ).append( " )" );
+			}
+			return label.toString();
+		}
+	}
+
+	private final Map< String, List< Signature > > signatures;
+
+	private OperationSignatures( Map< String, List< Signature > > signatures ) {
+		this.signatures = signatures;
+	}
+
+	/**
+	 * @param program the parsed module, including its imports
+	 * @return the signatures of the operations of the ports of the module
+	 */
+	static OperationSignatures of( ProgramInspector program ) {
+		Map< String, List< Signature > > signatures = new HashMap<>();
+		for( InputPortInfo port : program.getInputPorts() ) {
+			addPort( signatures, port, true );
+		}
+		for( OutputPortInfo port : program.getOutputPorts() ) {
+			addPort( signatures, port, false );
+		}
+		signatures.replaceAll( ( name, list ) -> Collections.unmodifiableList( list ) );
+		return new OperationSignatures( signatures );
+	}
+
+	/**
+	 * Keeps the signatures of a version of a document that compiled
+	 */
+	static void compiled( String uri, OperationSignatures signatures ) {
+		synchronized( LAST_COMPILED ) {
+			LAST_COMPILED.put( uri, signatures );
+		}
+	}
+
+	/**
+	 * @return the signatures of the last version of the document that compiled, null if there is none
+	 */
+	static OperationSignatures lastCompiled( String uri ) {
+		synchronized( LAST_COMPILED ) {
+			return LAST_COMPILED.get( uri );
+		}
+	}
+
+	/**
+	 * Drops the signatures of a document, e.g. when it is closed
+	 */
+	static void forget( String uri ) {
+		synchronized( LAST_COMPILED ) {
+			LAST_COMPILED.remove( uri );
+		}
+	}
+
+	/**
+	 * @return the signatures of all the operations of the module
+	 */
+	List< Signature > all() {
+		List< Signature > all = new ArrayList<>();
+		signatures.values().forEach( all::addAll );
+		return all;
+	}
+
+	/**
+	 * @param operation the name of the operation
+	 * @param port the output port the operation is used through, or null for the operations of the input ports
+	 * @return the signatures of the operation, empty if there is none
+	 */
+	List< Signature > lookup( String operation, String port ) {
+		return signatures.getOrDefault( port == null ? operation : operation + "@" + port, Collections.emptyList() );
+	}
+
+	private static void addPort( Map< String, List< Signature > > signatures, PortInfo port, boolean inputPort ) {
+		for( InterfaceDefinition iface : port.getInterfaceList() ) {
+			for( OperationDeclaration operation : iface.operationsMap().values() ) {
+				Signature signature = signature( operation, port.id(), inputPort, iface.name() );
+				String key = inputPort ? operation.id() : operation.id() + "@" + port.id();
+				signatures.computeIfAbsent( key, k -> new ArrayList<>( 1 ) ).add( signature );
+			}
+		}
+	}
+
+	private static Signature signature( OperationDeclaration operation, String port, boolean inputPort,
+		String interfaceName ) {
+		String documentation = operation.getDocumentation().orElse( null );
+		if( operation instanceof RequestResponseOperationDeclaration ) {
+			RequestResponseOperationDeclaration rrod = (RequestResponseOperationDeclaration) operation;
+			Map< String, String > faults = new LinkedHashMap<>();
+			rrod.faults().forEach( ( faultName, faultType ) -> faults.put( faultName, faultType.name() ) );
+			return new Signature( operation.id(), port, inputPort, interfaceName, rrod.requestType().name(),
+				rrod.responseType().name(), faults, documentation );
+		}
+		return new Signature( operation.id(), port, inputPort, interfaceName,
+			((OneWayOperationDeclaration) operation).requestType().name(), null, Collections.emptyMap(), documentation );
+	}
+}
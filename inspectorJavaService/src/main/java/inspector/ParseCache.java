@@ -0,0 +1,274 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.cli.CommandLineException;
+import jolie.lang.CodeCheckException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache of the results of parsing a Jolie module, shared by all the operations of the Inspector.
+ * An entry is looked up by the normalized URI of the module, the kind of parse result and the include paths,
+ * and it is only reused if the hash of the source and of every module in its import closure still match
+ * the ones seen when the entry was created.
+ * Entries are evicted in least-recently-used order when their estimated size exceeds the memory budget,
+ * configured through the "inspector.parseCache.maxBytes" setting.
+ */
+final class ParseCache {
+	/**
+	 * The kinds of parse results that are cached
+	 */
+	enum Kind {
+		INSPECTION
+	}
+
+	@FunctionalInterface
+	interface Parser< T > {
+		T parse() throws CommandLineException, IOException, CodeCheckException;
+	}
+
+	// A parsed AST takes much more memory than its source, this is a rough estimate of how much more
+	private static final long BYTES_PER_SOURCE_CHAR = 24;
+	private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	private static final ParseCache INSTANCE =
+		new ParseCache( InspectorSettings.getLong( "inspector.parseCache.maxBytes", DEFAULT_MAX_BYTES ) );
+
+	private final long maxBytes;
+	private final LinkedHashMap< String, Entry > entries = new LinkedHashMap<>( 64, 0.75f, true );
+	private long totalBytes = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private ParseCache( long maxBytes ) {
+		this.maxBytes = maxBytes;
+	}
+
+	static ParseCache instance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the cached parse result for the module, or parses it and caches the result
+	 * @param kind the kind of parse result
+	 * @param uri the uri of the module
+	 * @param includePaths the include paths the module is parsed with
+	 * @param source the current source of the module
+	 * @param importClosure gives the URIs of all the modules that were read to produce the result
+	 * @param parser parses the module in case the cache cannot be used
+	 * @return the parse result
+	 * @throws CommandLineException, IOException, CodeCheckException if parsing fails, failures are never cached
+	 */
+	< T > T get( Kind kind, URI uri, String[] includePaths, String source,
+		Function< T, Collection< URI > > importClosure, Parser< T > parser )
+		throws CommandLineException, IOException, CodeCheckException {
+		URI normalizedUri = uri.normalize();
+		String key = kind + "\u0000" + normalizedUri + "\u0000" + String.join( File.pathSeparator, includePaths );
+		byte[] sourceHash = hash( source.getBytes( StandardCharsets.UTF_8 ) );
+
+		Entry entry;
+		synchronized( this ) {
+			entry = entries.get( key );
+		}
+		if( entry != null && Arrays.equals( entry.sourceHash, sourceHash ) && entry.isImportClosureUnchanged() ) {
+			hits.incrementAndGet();
+			@SuppressWarnings( "unchecked" )
+			T result = (T) entry.result;
+			return result;
+		}
+
+		misses.incrementAndGet();
+		T result = parser.parse();
+
+		// stamp the modules the result depends on, the module itself is covered by sourceHash
+		Map< URI, FileStamp > closure = new HashMap<>();
+		long closureChars = source.length();
+		for( URI dependency : importClosure.apply( result ) ) {
+			URI normalizedDependency = dependency.normalize();
+			if( !normalizedDependency.equals( normalizedUri ) && !closure.containsKey( normalizedDependency ) ) {
+				FileStamp stamp = FileStamp.of( normalizedDependency );
+				closure.put( normalizedDependency, stamp );
+				closureChars += stamp.size;
+			}
+		}
+		put( key, new Entry( result, sourceHash, closure, closureChars * BYTES_PER_SOURCE_CHAR ) );
+		return result;
+	}
+
+	long hits() {
+		return hits.get();
+	}
+
+	long misses() {
+		return misses.get();
+	}
+
+	long evictions() {
+		return evictions.get();
+	}
+
+	synchronized long estimatedBytes() {
+		return totalBytes;
+	}
+
+	private synchronized void put( String key, Entry entry ) {
+		Entry old = entries.put( key, entry );
+		if( old != null ) {
+			totalBytes -= old.estimatedBytes;
+		}
+		totalBytes += entry.estimatedBytes;
+		// evict the least recently used entries, but always keep the one we just added
+		Iterator< Map.Entry< String, Entry > > it = entries.entrySet().iterator();
+		while( totalBytes > maxBytes && entries.size() > 1 && it.hasNext() ) {
+			Map.Entry< String, Entry > eldest = it.next();
+			if( eldest.getValue() != entry ) {
+				totalBytes -= eldest.getValue().estimatedBytes;
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	static byte[] hash( byte[] content ) {
+		try {
+			return MessageDigest.getInstance( "SHA-256" ).digest( content );
+		} catch( NoSuchAlgorithmException e ) { // every Java platform is required to support SHA-256
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static final class Entry {
+		private final Object result;
+		private final byte[] sourceHash;
+		private final Map< URI, FileStamp > importClosure;
+		private final long estimatedBytes;
+
+		private Entry( Object result, byte[] sourceHash, Map< URI, FileStamp > importClosure, long estimatedBytes ) {
+			this.result = result;
+			this.sourceHash = sourceHash;
+			this.importClosure = importClosure;
+			this.estimatedBytes = estimatedBytes;
+		}
+
+		private boolean isImportClosureUnchanged() {
+			for( Map.Entry< URI, FileStamp > dependency : importClosure.entrySet() ) {
+				if( !dependency.getValue().isUnchanged( dependency.getKey() ) ) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Size, modification time and content hash of a file.
+	 * Checking a stamp only reads the file when its size or modification time changed.
+	 */
+	static final class FileStamp {
+		private static final FileStamp MISSING = new FileStamp( -1, -1, new byte[ 0 ] );
+
+		private final long size;
+		private final long lastModified;
+		private final byte[] contentHash;
+
+		private FileStamp( long size, long lastModified, byte[] contentHash ) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+		}
+
+		/**
+		 * Restores a stamp that was taken earlier, e.g. by a previous run of the server
+		 */
+		static FileStamp restore( long size, long lastModified, byte[] contentHash ) {
+			// a module that was missing is still recognized as such
+			return size < 0 ? MISSING : new FileStamp( size, lastModified, contentHash );
+		}
+
+		long size() {
+			return size;
+		}
+
+		long lastModified() {
+			return lastModified;
+		}
+
+		byte[] contentHash() {
+			return contentHash;
+		}
+
+		/**
+		 * @param uri uri of a module
+		 * @return the stamp of the module, modules that are not plain files (e.g. inside jars)
+		 * or that belong to the Jolie installation never change
+		 */
+		static FileStamp of( URI uri ) {
+			if( !"file".equals( uri.getScheme() ) || StandardLibraryIndex.isStandardLibrary( uri ) ) {
+				return MISSING;
+			}
+			try {
+				Path path = Paths.get( uri );
+				BasicFileAttributes attributes = Files.readAttributes( path, BasicFileAttributes.class );
+				return new FileStamp( attributes.size(), attributes.lastModifiedTime().toMillis(),
+					hash( Metrics.readAllBytes( path ) ) );
+			} catch( IOException | IllegalArgumentException e ) {
+				return MISSING;
+			}
+		}
+
+		boolean isUnchanged( URI uri ) {
+			if( !"file".equals( uri.getScheme() ) || StandardLibraryIndex.isStandardLibrary( uri ) ) {
+				return true;
+			}
+			try {
+				Path path = Paths.get( uri );
+				BasicFileAttributes attributes = Files.readAttributes( path, BasicFileAttributes.class );
+				if( attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified ) {
+					return true;
+				}
+				// the file was touched, it is only changed if the content is different
+				return attributes.size() == size && Arrays.equals( contentHash, hash( Metrics.readAllBytes( path ) ) );
+			} catch( NoSuchFileException e ) {
+				return this == MISSING;
+			} catch( IOException | IllegalArgumentException e ) {
+				return false;
+			}
+		}
+	}
+}
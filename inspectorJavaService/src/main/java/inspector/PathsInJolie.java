@@ -25,10 +25,8 @@
 package inspector;
 
 import java.util.ArrayList;
-import java.io.BufferedReader;
+import java.util.List;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 
 import jolie.runtime.JavaService;
 import jolie.runtime.Value;
@@ -80,7 +78,7 @@ public class PathsInJolie extends JavaService{
      * @param joliePackagePath
      * @return list of files and directories which could the completion of what the user wanted to write as the packagePath
      */
-    private ArrayList<File> possibleFilesAtPath(String sourcePath, String joliePackagePath){
+    private List<DirectoryListingCache.Entry> possibleFilesAtPath(String sourcePath, String joliePackagePath){
         // if the sourcePath given includes the filename, get the path of the directory
         String parentPath;
         if(sourcePath.endsWith(".ol")){
@@ -89,30 +87,27 @@ public class PathsInJolie extends JavaService{
         } else {
             parentPath = sourcePath;
         }
-        ArrayList<File> possibleFiles = new ArrayList<>();
+        ArrayList<DirectoryListingCache.Entry> possibleFiles = new ArrayList<>();
 
+        // the listings are cached, so completing an import does not list the directories again on every keystroke
+        DirectoryListingCache listingCache = DirectoryListingCache.instance();
         File correctPath = new File(parentPath + joliePackagePath);
-        if(correctPath.isDirectory()){ // if we are in a directory find all ".ol" files and all subdirectories
-            for (File file : correctPath.listFiles()) {
-                if(file.isFile()){
-                    if(file.getPath().endsWith(".ol")){
-                        possibleFiles.add(file);
-                    }
-                }else if(file.isDirectory()){
-                    possibleFiles.add(file);
-                }   
+        if(listingCache.isDirectory(correctPath.toPath())){ // if we are in a directory find all ".ol" files and all subdirectories
+            for (DirectoryListingCache.Entry entry : listingCache.list(correctPath.toPath())) {
+                if(entry.isDirectory() || entry.name().endsWith(".ol")){
+                    possibleFiles.add(entry);
+                }
             }
         } else { // if the path is not a directory, go to parentdirectory,
-            // look through all files to find filenames that matches the part of the correctPath that, which made it not a directory 
+            // look through all files to find filenames that starts with the part of the correctPath, which made it not a directory
             File parentDirectory = correctPath.getParentFile();
-            if(parentDirectory.isDirectory()){
-                for (File file : parentDirectory.listFiles()) {
-                    String[] tempsplit = correctPath.getPath().split("\\"+System.getProperty("file.separator"));
-                    String lastPart = tempsplit[tempsplit.length-1];
-                    if(file.getPath().contains(System.getProperty("file.separator")+lastPart)){
-                        possibleFiles.add(file);
+            List<DirectoryListingCache.Entry> entries = parentDirectory == null ? null : listingCache.list(parentDirectory.toPath());
+            if(entries != null){
+                String lastPart = correctPath.getName();
+                for (DirectoryListingCache.Entry entry : entries) {
+                    if(entry.name().startsWith(lastPart)){
+                        possibleFiles.add(entry);
                     }
-                    
                 }
             }
         }
@@ -126,11 +121,15 @@ public class PathsInJolie extends JavaService{
      */
     @RequestResponse
     public Value inspectPackagePath(Value request) {
+        return Metrics.time("inspectPackagePath", () -> doInspectPackagePath(request));
+    }
+
+    private Value doInspectPackagePath(Value request) {
         String sourcePath = request.getFirstChild( "sourcePath" ).strValue().substring(5); // removes "file:/"
         String joliePackagePath = request.getFirstChild("joliePackagePath").strValue();
         Value result = Value.create();
         ValueVector possibliePackagesVector = result.getChildren("possiblePackages");
-        ArrayList<File> possibleFiles;
+        List<DirectoryListingCache.Entry> possibleFiles;
         if(joliePackagePath.startsWith(".")){ // packagepath to module is local to the sourcepath
             joliePackagePath = packagePathToPath(joliePackagePath); // turns packagePath into a correct path
             // finds all file and directory names at the packagePath which can be the completion for the packagePath we are looking for
@@ -139,13 +138,11 @@ public class PathsInJolie extends JavaService{
             joliePackagePath = packagePathToPath(joliePackagePath);
             possibleFiles = possibleFilesAtPath(System.getenv("JOLIE_HOME")+System.getProperty("file.separator")+"packages", joliePackagePath);
         }
-        for (File file : possibleFiles) {
-            // split path according to file separator and save the last part, which is the file or directory name
-            String[] pathSplit = file.getPath().split("\\"+System.getProperty("file.separator"));
-            String name = pathSplit[pathSplit.length-1];
+        for (DirectoryListingCache.Entry file : possibleFiles) {
+            String name = file.name();
             if(name.contains(".")){ // if the name contains a "." it is an ".ol" file
-                // split by "." and save first part as the name
-                name = name.split("\\.")[0];
+                // save the part before the first "." as the name
+                name = name.substring(0, name.indexOf('.'));
             }
             // all file and directory names are saved and returned
             possibliePackagesVector.add(Value.create(name));
@@ -156,18 +153,35 @@ public class PathsInJolie extends JavaService{
 
     /**
      * Called from langaugeserver/internal/completionHelper.ol
-     * Goes through all symbols in the imported module and checks wether they match what the user has started to write
-     * as the symbol they want to import. The symbol can either be a service
+     * Looks up the symbols declared in the imported module which start with what the user has started to write
+     * as the symbol they want to import. The symbols come from the symbol table of the module,
+     * which is only parsed again when the module changed
      * @param request
-     * @return value containing a list(valueVector) of service, interface and type names
+     * @return value containing a list(valueVector) of service, interface and type names, each with its kind
      */
+    @RequestResponse
     public Value inspectSymbol(Value request) {
+        return Metrics.time("inspectSymbol", () -> doInspectSymbol(request));
+    }
+
+    private Value doInspectSymbol(Value request) {
         String sourcePath = request.getFirstChild( "sourcePath" ).strValue().substring(5);
         String packagePath = request.getFirstChild("packagePath").strValue();
         String symbol = request.getFirstChild("symbol").strValue();
         Value result = Value.create();
         ValueVector possibleSymbolsVector = result.getChildren("possibleSymbols");
 
+        // modules of the standard library are answered from its index, which is built once per installation,
+        // until it is built in the background they are parsed like the local modules
+        if(!packagePath.startsWith(".")){
+            StandardLibraryIndex standardLibrary = StandardLibraryIndex.forInstallation(System.getenv("JOLIE_HOME"), interpreter());
+            StandardLibraryIndex.Module module = standardLibrary == null ? null : standardLibrary.module(packagePath);
+            if(module != null){
+                addPossibleSymbols(possibleSymbolsVector, module.symbolsWithPrefix(symbol));
+                return result;
+            }
+        }
+
         // Create the correct path to the module the symbol should be imported from
         File filePath;
         if(packagePath.startsWith(".")){ // local module
@@ -182,27 +196,22 @@ public class PathsInJolie extends JavaService{
             filePath = new File(System.getenv("JOLIE_HOME")+System.getProperty("file.separator")+"packages"+packagePath+".ol");
         }
 
-        // read through the module source code and find services,interfaces and types matching the word we are trying to complete
-        // TODO: should probably use the symboltable from the compiler instead
         if(filePath.isFile()){
-            try{
-                FileReader fr = new FileReader(filePath);
-                BufferedReader br = new BufferedReader(fr);
-                String line;
-                while((line=br.readLine())!=null){
-                    if(line.matches("^(service|interface)\\s.+\\s\\{.*$") || line.matches("^type\\s.+(\\s\\{|\\:\\s.\\{).*$")){
-                        String[] tempSplit = line.split(" ");
-                        String name = tempSplit[1];
-                        if(name.startsWith(symbol)){
-                            possibleSymbolsVector.add(Value.create(name));
-                        }
-                    }
-                }
-                br.close();
-
-            }catch(IOException e){ // if an error occurs we simply do nothing, and the result will be empty
-            }
+            String[] includePaths = {
+                System.getenv("JOLIE_HOME")+System.getProperty("file.separator")+"include",
+                filePath.getAbsoluteFile().getParent()
+            };
+            WorkspaceIndex.ModuleLoader loader = Inspector.moduleLoader(includePaths, interpreter());
+            addPossibleSymbols(possibleSymbolsVector, ModuleSymbolCache.instance().symbolsWithPrefix(filePath, symbol, loader));
         }
         return result;
     }
+
+    private static void addPossibleSymbols(ValueVector possibleSymbolsVector, List<ModuleSummary.Symbol> symbols){
+        for (ModuleSummary.Symbol moduleSymbol : symbols) {
+            Value possibleSymbol = Value.create(moduleSymbol.name());
+            possibleSymbol.setFirstChild("kind", moduleSymbol.kind().name().toLowerCase());
+            possibleSymbolsVector.add(possibleSymbol);
+        }
+    }
 }
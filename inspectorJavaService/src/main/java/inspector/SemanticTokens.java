@@ -0,0 +1,247 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.lang.parse.ast.InputPortInfo;
+import jolie.lang.parse.ast.InterfaceDefinition;
+import jolie.lang.parse.ast.OLSyntaxNode;
+import jolie.lang.parse.ast.OutputPortInfo;
+import jolie.lang.parse.ast.types.TypeDefinition;
+import jolie.lang.parse.util.ProgramInspector;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Produces the semantic tokens of a module in the integer encoding of the LSP: every token is five integers,
+ * the line and start character relative to the previous token, the length, the token type and the modifiers.
+ * The identifiers of the source are classified through the parsed program: types, interfaces, ports and operations,
+ * and services through their declarations.
+ * The last result of every document is kept, so that the next request can be answered with the edits
+ * turning the previous result into the new one, which are small when a single line changed.
+ */
+final class SemanticTokens {
+	/**
+	 * The token types of the legend, in the order of their index
+	 */
+	static final List< String > TOKEN_TYPES = List.of( "type", "interface", "class", "variable", "method" );
+	/**
+	 * The token modifiers of the legend, in the order of their bit
+	 */
+	static final List< String > TOKEN_MODIFIERS = List.of( "declaration", "defaultLibrary" );
+
+	private static final int TYPE = 0;
+	private static final int INTERFACE = 1;
+	private static final int SERVICE = 2;
+	private static final int PORT = 3;
+	private static final int OPERATION = 4;
+
+	private static final int DECLARATION = 1;
+	private static final int DEFAULT_LIBRARY = 1 << 1;
+
+	// the documents open in an editor, the least recently used results are dropped beyond this
+	private static final int MAX_DOCUMENTS = 64;
+
+	/**
+	 * The encoded tokens of a document, identified by a result id
+	 */
+	static final class Result {
+		private final String resultId;
+		private final int[] data;
+
+		private Result( String resultId, int[] data ) {
+			this.resultId = resultId;
+			this.data = data;
+		}
+
+		String resultId() {
+			return resultId;
+		}
+
+		int[] data() {
+			return data;
+		}
+	}
+
+	/**
+	 * Replaces deleteCount integers at start of the previous result with data
+	 */
+	static final class Edit {
+		private final int start;
+		private final int deleteCount;
+		private final int[] data;
+
+		private Edit( int start, int deleteCount, int[] data ) {
+			this.start = start;
+			this.deleteCount = deleteCount;
+			this.data = data;
+		}
+
+		int start() {
+			return start;
+		}
+
+		int deleteCount() {
+			return deleteCount;
+		}
+
+		int[] data() {
+			return data;
+		}
+	}
+
+	private static final AtomicLong NEXT_RESULT_ID = new AtomicLong( 1 );
+	private static final Map< String, Result > LATEST = new LinkedHashMap<>( 16, 0.75f, true ) {
+		@Override
+		protected boolean removeEldestEntry( Map.Entry< String, Result > eldest ) {
+			return size() > MAX_DOCUMENTS;
+		}
+	};
+
+	private SemanticTokens() {}
+
+	/**
+	 * @param program the parsed module
+	 * @param source the source the module was parsed from
+	 * @return the encoded tokens of the source
+	 */
+	static int[] encode( ProgramInspector program, String source ) {
+		Map< String, Integer > kinds = new HashMap<>();
+		Set< String > standardLibrary = new HashSet<>();
+		for( TypeDefinition type : program.getTypes() ) {
+			classify( kinds, standardLibrary, type.name(), TYPE, type );
+		}
+		for( InterfaceDefinition iface : program.getInterfaces() ) {
+			classify( kinds, standardLibrary, iface.name(), INTERFACE, iface );
+		}
+		for( InputPortInfo port : program.getInputPorts() ) {
+			kinds.putIfAbsent( port.id(), PORT );
+		}
+		for( OutputPortInfo port : program.getOutputPorts() ) {
+			kinds.putIfAbsent( port.id(), PORT );
+		}
+		for( InterfaceDefinition iface : program.getInterfaces() ) {
+			iface.operationsMap().keySet().forEach( operation -> kinds.putIfAbsent( operation, OPERATION ) );
+		}
+
+		List< IdentifierLexer.Token > tokens = new ArrayList<>();
+		Set< String > services = new HashSet<>();
+		IdentifierLexer.symbols( source, token -> {
+			if( "service".equals( token.declarationKeyword() ) ) {
+				services.add( token.text() );
+				tokens.add( token );
+			} else if( kinds.containsKey( token.text() ) ) {
+				tokens.add( token );
+			}
+		} );
+
+		int[] data = new int[ tokens.size() * 5 ];
+		int count = 0;
+		int previousLine = 0;
+		int previousStart = 0;
+		for( IdentifierLexer.Token token : tokens ) {
+			// a service can be used, e.g. embedded, before it is declared
+			int kind = services.contains( token.text() ) && !kinds.containsKey( token.text() ) ? SERVICE : kinds.get( token.text() );
+			int modifiers = token.isDeclaration() ? DECLARATION : 0;
+			if( standardLibrary.contains( token.text() ) ) {
+				modifiers |= DEFAULT_LIBRARY;
+			}
+			data[ count++ ] = token.line() - previousLine;
+			data[ count++ ] = token.line() == previousLine ? token.startCharacter() - previousStart : token.startCharacter();
+			data[ count++ ] = token.endCharacter() - token.startCharacter();
+			data[ count++ ] = kind;
+			data[ count++ ] = modifiers;
+			previousLine = token.line();
+			previousStart = token.startCharacter();
+		}
+		return data;
+	}
+
+	/**
+	 * Remembers the tokens as the latest result of the document
+	 * @param uri the document
+	 * @param data the encoded tokens
+	 * @return the result, with a new result id
+	 */
+	static Result store( String uri, int[] data ) {
+		Result result = new Result( Long.toString( NEXT_RESULT_ID.getAndIncrement() ), data );
+		synchronized( LATEST ) {
+			LATEST.put( uri, result );
+		}
+		return result;
+	}
+
+	/**
+	 * @param uri the document
+	 * @return the latest result of the document, or null if there is none
+	 */
+	static Result latest( String uri ) {
+		synchronized( LATEST ) {
+			return LATEST.get( uri );
+		}
+	}
+
+	/**
+	 * @param previous the result the client has
+	 * @param data the new encoded tokens
+	 * @return the edits turning the previous result into the new one: none if they are the same,
+	 * otherwise a single edit replacing the integers between the common prefix and the common suffix
+	 */
+	static List< Edit > diff( int[] previous, int[] data ) {
+		int prefix = 0;
+		int maxCommon = Math.min( previous.length, data.length );
+		while( prefix < maxCommon && previous[ prefix ] == data[ prefix ] ) {
+			prefix++;
+		}
+		if( prefix == previous.length && prefix == data.length ) {
+			return Collections.emptyList();
+		}
+		int suffix = 0;
+		while( suffix < maxCommon - prefix
+			&& previous[ previous.length - 1 - suffix ] == data[ data.length - 1 - suffix ] ) {
+			suffix++;
+		}
+		return List.of( new Edit( prefix, previous.length - prefix - suffix,
+			Arrays.copyOfRange( data, prefix, data.length - suffix ) ) );
+	}
+
+	/**
+	 * Forgets the results of a closed document
+	 */
+	static void forget( String uri ) {
+		synchronized( LATEST ) {
+			LATEST.remove( uri );
+		}
+	}
+
+	private static void classify( Map< String, Integer > kinds, Set< String > standardLibrary, String name, int kind,
+		OLSyntaxNode node ) {
+		if( kinds.putIfAbsent( name, kind ) == null && node.context() != null ) {
+			URI source = node.context().source();
+			if( source != null && StandardLibraryIndex.isStandardLibrary( source ) ) {
+				standardLibrary.add( name );
+			}
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.Interpreter;
+import jolie.lang.parse.SemanticVerifier;
+import jolie.lang.parse.ast.InterfaceDefinition;
+import jolie.lang.parse.module.LocalSymbolInfo;
+import jolie.lang.parse.module.SymbolTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Read-only index of the modules in the packages directory of a Jolie installation:
+ * their symbols, and the operations of their interfaces.
+ * The standard library does not change while an installation is used, so the index is built once
+ * per installation path and Jolie version and shared by all documents, and the ParseCache does not
+ * check the files of the installation for changes.
+ * Parsing the whole library takes seconds, so the index is built in the background and the callers
+ * parse the modules they need themselves until it is ready.
+ */
+final class StandardLibraryIndex {
+	/**
+	 * A module of the standard library, e.g. "console" or "string_utils"
+	 */
+	static final class Module {
+		private final String name;
+		private final String path;
+		private final NavigableMap< String, ModuleSummary.Symbol > symbols;
+		private final Map< String, List< String > > operations;
+
+		private Module( String name, String path, NavigableMap< String, ModuleSummary.Symbol > symbols,
+			Map< String, List< String > > operations ) {
+			this.name = name;
+			this.path = path;
+			this.symbols = symbols;
+			this.operations = operations;
+		}
+
+		/**
+		 * @return the name used to import the module, with dots between the directories
+		 */
+		String name() {
+			return name;
+		}
+
+		String path() {
+			return path;
+		}
+
+		/**
+		 * @param prefix the start of the symbol names to look for
+		 * @return the symbols declared in the module starting with the prefix, ordered by name
+		 */
+		List< ModuleSummary.Symbol > symbolsWithPrefix( String prefix ) {
+			return new ArrayList<>( symbols.subMap( prefix, true, prefix + Character.MAX_VALUE, false ).values() );
+		}
+
+		/**
+		 * @param interfaceName an interface declared in the module
+		 * @return the names of its operations, ordered by name
+		 */
+		List< String > operations( String interfaceName ) {
+			return operations.getOrDefault( interfaceName, Collections.emptyList() );
+		}
+	}
+
+	private static final Map< String, CompletableFuture< StandardLibraryIndex > > INDEXES = new ConcurrentHashMap<>();
+	private static final List< Path > INSTALLATION_ROOTS = new CopyOnWriteArrayList<>();
+
+	static {
+		String jolieHome = System.getenv( "JOLIE_HOME" );
+		if( jolieHome != null ) {
+			INSTALLATION_ROOTS.add( realPath( Paths.get( jolieHome ) ) );
+		}
+	}
+
+	private final Path root;
+	private final String version;
+	private final Map< String, Module > modules;
+
+	private StandardLibraryIndex( Path root, String version, Map< String, Module > modules ) {
+		this.root = root;
+		this.version = version;
+		this.modules = modules;
+	}
+
+	/**
+	 * Starts building the index in the background the first time an installation is used, without waiting for it
+	 * @param jolieHome the path of the Jolie installation
+	 * @param interpreter the interpreter of the calling service, which provides the package paths
+	 * @return the index of the installation, or null if jolieHome is null or the index is not built yet
+	 */
+	static StandardLibraryIndex forInstallation( String jolieHome, Interpreter interpreter ) {
+		if( jolieHome == null ) {
+			return null;
+		}
+		Path root = realPath( Paths.get( jolieHome ) );
+		String version = jolieVersion();
+		if( !INSTALLATION_ROOTS.contains( root ) ) {
+			INSTALLATION_ROOTS.add( root );
+		}
+		return INDEXES.computeIfAbsent( root + "@" + version,
+			key -> CompletableFuture.supplyAsync( () -> build( root, version, interpreter ), runnable -> {
+				Thread builder = new Thread( runnable, "standard-library-index" );
+				builder.setDaemon( true );
+				builder.start();
+			} ).exceptionally( e -> new StandardLibraryIndex( root, version, Collections.emptySortedMap() ) ) )
+			.getNow( null );
+	}
+
+	/**
+	 * @param uri the uri of a module
+	 * @return true if the module belongs to a Jolie installation, and therefore never changes
+	 */
+	static boolean isStandardLibrary( URI uri ) {
+		if( !"file".equals( uri.getScheme() ) ) {
+			return false;
+		}
+		try {
+			Path path = Paths.get( uri ).toAbsolutePath().normalize();
+			for( Path installationRoot : INSTALLATION_ROOTS ) {
+				if( path.startsWith( installationRoot ) ) {
+					return true;
+				}
+			}
+		} catch( IllegalArgumentException e ) {
+			// not a path of the default file system
+		}
+		return false;
+	}
+
+	/**
+	 * @param name the name used to import the module, e.g. "console"
+	 * @return the module, or null if the standard library has no such module
+	 */
+	Module module( String name ) {
+		return modules.get( name );
+	}
+
+	/**
+	 * @return all modules of the standard library, ordered by name
+	 */
+	Collection< Module > modules() {
+		return modules.values();
+	}
+
+	String version() {
+		return version;
+	}
+
+	Path root() {
+		return root;
+	}
+
+	private static StandardLibraryIndex build( Path root, String version, Interpreter interpreter ) {
+		Path packages = root.resolve( "packages" );
+		String[] includePaths = { root.resolve( "include" ).toString() };
+		SortedMap< String, Module > modules = new TreeMap<>();
+		if( Files.isDirectory( packages ) ) {
+			try( Stream< Path > allFiles = Files.walk( packages ) ) {
+				File[] olFiles = allFiles.filter( Files::isRegularFile ).filter( path -> path.toString().endsWith( ".ol" ) )
+					.sorted().map( Path::toFile ).toArray( File[]::new );
+				WorkspaceScanner.scan( olFiles, olFile -> load( packages, olFile, includePaths, interpreter ) ).stream()
+					.filter( Objects::nonNull ).forEach( module -> modules.put( module.name, module ) );
+			} catch( Exception e ) {
+				// an incomplete index is still useful, the modules that are missing are parsed when they are imported
+			}
+		}
+		return new StandardLibraryIndex( root, version, Collections.unmodifiableSortedMap( modules ) );
+	}
+
+	// returns null if the module does not compile
+	private static Module load( Path packages, File olFile, String[] includePaths, Interpreter interpreter ) {
+		try {
+			String source = Metrics.readString( olFile.toPath() );
+			SemanticVerifier parseResult = Inspector.getModuleInspector( olFile.toString(), Optional.of( source ),
+				includePaths, interpreter );
+			SymbolTable symbolTable = parseResult.symbolTables().get( olFile.toURI() );
+			if( symbolTable == null ) {
+				return null;
+			}
+			NavigableMap< String, ModuleSummary.Symbol > symbols = new TreeMap<>();
+			ModuleSummary.of( olFile.toString(), symbolTable ).symbols().stream()
+				.filter( symbol -> !symbol.isImported() )
+				.forEach( symbol -> symbols.put( symbol.name(), symbol ) );
+			Map< String, List< String > > operations = new HashMap<>();
+			for( LocalSymbolInfo localSymbol : symbolTable.localSymbols() ) {
+				if( localSymbol.node() instanceof InterfaceDefinition ) {
+					operations.put( localSymbol.name(), ((InterfaceDefinition) localSymbol.node()).operationsMap().keySet()
+						.stream().sorted().collect( Collectors.toUnmodifiableList() ) );
+				}
+			}
+			String relativePath = packages.relativize( olFile.toPath() ).toString();
+			String name = relativePath.substring( 0, relativePath.length() - ".ol".length() )
+				.replace( File.separatorChar, '.' );
+			return new Module( name, olFile.toString(), symbols, operations );
+		} catch( Exception e ) {
+			return null;
+		}
+	}
+
+	static String jolieVersion() {
+		Package jolie = Interpreter.class.getPackage();
+		String version = jolie == null ? null : jolie.getImplementationVersion();
+		return version == null ? "unknown" : version;
+	}
+
+	private static Path realPath( Path path ) {
+		try {
+			return path.toRealPath();
+		} catch( IOException e ) {
+			return path.toAbsolutePath().normalize();
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.*;
+
+/**
+ * Maps symbol names to the modules declaring or importing them.
+ * Substring queries are answered through an n-gram index over the distinct symbol names:
+ * every substring of up to GRAM_LENGTH characters of a name points to the name,
+ * so short queries are a single lookup and longer queries only check the names sharing their rarest n-gram.
+ * Prefix queries are answered from the sorted set of names, and fuzzy queries score every distinct name
+ * with the FuzzyMatcher and keep only the best entries.
+ * The index is not thread safe, WorkspaceIndex guards it.
+ */
+final class SymbolIndex {
+	private static final int GRAM_LENGTH = 3;
+
+	/**
+	 * A symbol together with the module it was found in
+	 */
+	static final class Entry {
+		private final String modulePath;
+		private final ModuleSummary.Symbol symbol;
+
+		private Entry( String modulePath, ModuleSummary.Symbol symbol ) {
+			this.modulePath = modulePath;
+			this.symbol = symbol;
+		}
+
+		String modulePath() {
+			return modulePath;
+		}
+
+		ModuleSummary.Symbol symbol() {
+			return symbol;
+		}
+	}
+
+	private static final class RankedEntry {
+		// best score first, then ordered by name and place, so that the result does not depend on hashing
+		private static final Comparator< RankedEntry > ORDER = Comparator.< RankedEntry >comparingInt( ranked -> -ranked.score )
+			.thenComparing( ranked -> ranked.entry.symbol.name() )
+			.thenComparing( ranked -> ranked.entry.modulePath )
+			.thenComparingInt( ranked -> ranked.entry.symbol.line() );
+
+		private final Entry entry;
+		private final int score;
+
+		private RankedEntry( Entry entry, int score ) {
+			this.entry = entry;
+			this.score = score;
+		}
+	}
+
+	private final Map< String, List< Entry > > entriesByName = new HashMap<>();
+	private final Map< String, Set< String > > namesByGram = new HashMap<>();
+	private final TreeSet< String > sortedNames = new TreeSet<>();
+
+	void add( ModuleSummary module ) {
+		for( ModuleSummary.Symbol symbol : module.symbols() ) {
+			List< Entry > entries = entriesByName.get( symbol.name() );
+			if( entries == null ) {
+				entries = new ArrayList<>( 2 );
+				entriesByName.put( symbol.name(), entries );
+				sortedNames.add( symbol.name() );
+				for( String gram : grams( symbol.name() ) ) {
+					namesByGram.computeIfAbsent( gram, g -> new HashSet<>() ).add( symbol.name() );
+				}
+			}
+			entries.add( new Entry( module.path(), symbol ) );
+		}
+	}
+
+	void remove( ModuleSummary module ) {
+		for( ModuleSummary.Symbol symbol : module.symbols() ) {
+			List< Entry > entries = entriesByName.get( symbol.name() );
+			if( entries == null ) {
+				continue;
+			}
+			entries.removeIf( entry -> entry.symbol == symbol );
+			if( entries.isEmpty() ) {
+				entriesByName.remove( symbol.name() );
+				sortedNames.remove( symbol.name() );
+				for( String gram : grams( symbol.name() ) ) {
+					Set< String > names = namesByGram.get( gram );
+					if( names != null ) {
+						names.remove( symbol.name() );
+						if( names.isEmpty() ) {
+							namesByGram.remove( gram );
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param query the text to look for, the empty query matches every symbol
+	 * @return all entries whose symbol name contains the query
+	 */
+	List< Entry > query( String query ) {
+		List< Entry > result = new ArrayList<>();
+		for( String name : namesContaining( query ) ) {
+			result.addAll( entriesByName.get( name ) );
+		}
+		return result;
+	}
+
+	/**
+	 * @param prefix the start of the symbol names to look for
+	 * @return all entries whose symbol name starts with the prefix, ordered by name
+	 */
+	List< Entry > queryPrefix( String prefix ) {
+		List< Entry > result = new ArrayList<>();
+		for( String name : sortedNames.tailSet( prefix, true ) ) {
+			if( !name.startsWith( prefix ) ) {
+				break;
+			}
+			result.addAll( entriesByName.get( name ) );
+		}
+		return result;
+	}
+
+	/**
+	 * @param query the text to match, see FuzzyMatcher, the empty query matches every symbol
+	 * @param limit how many entries to return at most
+	 * @return the entries whose symbol name matches the query, best match first
+	 */
+	List< Entry > queryRanked( String query, int limit ) {
+		TopK< RankedEntry > top = new TopK<>( limit, RankedEntry.ORDER );
+		for( Map.Entry< String, List< Entry > > named : entriesByName.entrySet() ) {
+			int score = FuzzyMatcher.score( query, named.getKey() );
+			if( score != FuzzyMatcher.NO_MATCH ) {
+				for( Entry entry : named.getValue() ) {
+					top.offer( new RankedEntry( entry, score ) );
+				}
+			}
+		}
+		List< Entry > result = new ArrayList<>();
+		top.sorted().forEach( ranked -> result.add( ranked.entry ) );
+		return result;
+	}
+
+	/**
+	 * @return every distinct symbol name in the index
+	 */
+	Set< String > names() {
+		return Collections.unmodifiableSet( entriesByName.keySet() );
+	}
+
+	List< Entry > entries( String name ) {
+		List< Entry > entries = entriesByName.get( name );
+		return entries == null ? Collections.emptyList() : Collections.unmodifiableList( entries );
+	}
+
+	private Collection< String > namesContaining( String query ) {
+		if( query.isEmpty() ) {
+			return entriesByName.keySet();
+		}
+		if( query.length() <= GRAM_LENGTH ) {
+			Set< String > names = namesByGram.get( query );
+			return names == null ? Collections.emptySet() : names;
+		}
+		// only the names sharing the rarest n-gram of the query can contain it
+		Set< String > candidates = null;
+		for( int i = 0; i + GRAM_LENGTH <= query.length(); i++ ) {
+			Set< String > names = namesByGram.get( query.substring( i, i + GRAM_LENGTH ) );
+			if( names == null ) {
+				return Collections.emptySet();
+			}
+			if( candidates == null || names.size() < candidates.size() ) {
+				candidates = names;
+			}
+		}
+		List< String > result = new ArrayList<>();
+		for( String name : candidates ) {
+			if( name.contains( query ) ) {
+				result.add( name );
+			}
+		}
+		return result;
+	}
+
+	private static Set< String > grams( String name ) {
+		Set< String > grams = new HashSet<>();
+		for( int length = 1; length <= GRAM_LENGTH; length++ ) {
+			for( int i = 0; i + length <= name.length(); i++ ) {
+				grams.add( name.substring( i, i + length ) );
+			}
+		}
+		return grams;
+	}
+}
@@ -0,0 +1,173 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A workspace symbol query whose results are handed out module by module, so that the language server
+ * can send them as partial results while the rest of the workspace is still being parsed.
+ * If the WorkspaceIndex is not built yet, the modules matching the query are passed on as soon as the index
+ * build summarizes them, up to the limit of the search, as results that were already sent cannot be taken back.
+ * Otherwise the best matches are selected from the index, and they are available at once.
+ * The search runs in the background and is cancelled by a newer workspace symbol query, like the other
+ * workspace operations, then it ends with the results found so far.
+ */
+final class SymbolSearch {
+	/**
+	 * The results that became available since the previous batch
+	 */
+	static final class Batch {
+		private final SortedMap< String, List< ModuleSummary.Symbol > > modules;
+		private final boolean done;
+
+		private Batch( SortedMap< String, List< ModuleSummary.Symbol > > modules, boolean done ) {
+			this.modules = modules;
+			this.done = done;
+		}
+
+		/**
+		 * @return the matching symbols grouped by module path, ordered by path
+		 */
+		SortedMap< String, List< ModuleSummary.Symbol > > modules() {
+			return modules;
+		}
+
+		/**
+		 * @return true if this is the last batch of the search
+		 */
+		boolean isDone() {
+			return done;
+		}
+	}
+
+	private static final class Result {
+		private final String modulePath;
+		private final List< ModuleSummary.Symbol > symbols;
+
+		private Result( String modulePath, List< ModuleSummary.Symbol > symbols ) {
+			this.modulePath = modulePath;
+			this.symbols = symbols;
+		}
+	}
+
+	// marks the end of the results of a search
+	private static final Result END = new Result( null, Collections.emptyList() );
+
+	// once the first result of a batch is available, the batch waits this long for more results,
+	// so that a fast scan does not turn into one notification per module
+	private static final long BATCH_NANOS =
+		TimeUnit.MILLISECONDS.toNanos( InspectorSettings.getLong( "inspector.symbolSearch.batchMs", 50 ) );
+
+	private static final Map< Long, SymbolSearch > SEARCHES = new ConcurrentHashMap<>();
+	private static final AtomicLong NEXT_ID = new AtomicLong( 1 );
+	private static final ExecutorService RUNNER = Executors.newCachedThreadPool( runnable -> {
+		Thread thread = new Thread( runnable, "inspector-symbol-search" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	private final BlockingQueue< Result > results = new LinkedBlockingQueue<>();
+
+	private SymbolSearch() {}
+
+	/**
+	 * Starts a search in the background
+	 * @param index the index of the workspace
+	 * @param loader parses the modules, in case the index has to be built
+	 * @param query the text to look for
+	 * @param prefixOnly if true, only symbols starting with the query match, otherwise the ones matching it
+	 * according to the FuzzyMatcher
+	 * @param limit how many symbols to find at most
+	 * @return the id of the search, to be given to next
+	 */
+	static long start( WorkspaceIndex index, WorkspaceIndex.ModuleLoader loader, String query, boolean prefixOnly, int limit ) {
+		long id = NEXT_ID.getAndIncrement();
+		SymbolSearch search = new SymbolSearch();
+		SEARCHES.put( id, search );
+		RUNNER.execute( () -> search.run( index, loader, query, prefixOnly, limit ) );
+		return id;
+	}
+
+	/**
+	 * Waits for the next results of a search
+	 * @param id the id of the search
+	 * @return the results that are available, the last batch is marked as done and ends the search,
+	 * also if the search was cancelled
+	 * @throws InterruptedException
+	 */
+	static Batch next( long id ) throws InterruptedException {
+		SymbolSearch search = SEARCHES.get( id );
+		if( search == null ) { // already finished
+			return new Batch( new TreeMap<>(), true );
+		}
+		SortedMap< String, List< ModuleSummary.Symbol > > modules = new TreeMap<>();
+		Result result = search.results.take();
+		long deadline = System.nanoTime() + BATCH_NANOS;
+		while( result != null && result != END ) {
+			modules.put( result.modulePath, result.symbols );
+			result = search.results.poll( Math.max( 0, deadline - System.nanoTime() ), TimeUnit.NANOSECONDS );
+		}
+		if( result == END ) {
+			SEARCHES.remove( id );
+			return new Batch( modules, true );
+		}
+		return new Batch( modules, false );
+	}
+
+	private void run( WorkspaceIndex index, WorkspaceIndex.ModuleLoader loader, String query, boolean prefixOnly, int limit ) {
+		AtomicInteger found = new AtomicInteger();
+		try {
+			CancellationRegistry.instance().run( CancellationRegistry.Kind.SYMBOL_QUERY, token -> {
+				boolean streamed = index.ensureBuilt( loader, token, summary -> {
+					List< ModuleSummary.Symbol > matches = new ArrayList<>();
+					for( ModuleSummary.Symbol symbol : summary.symbols() ) {
+						boolean match = prefixOnly ? symbol.name().startsWith( query )
+							: FuzzyMatcher.score( query, symbol.name() ) != FuzzyMatcher.NO_MATCH;
+						if( match && found.getAndIncrement() < limit ) {
+							matches.add( symbol );
+						}
+					}
+					if( !matches.isEmpty() ) {
+						results.add( new Result( summary.path(), matches ) );
+					}
+				} );
+				if( !streamed ) {
+					( prefixOnly ? index.query( query, true ) : index.queryRanked( query, limit ) )
+						.forEach( ( path, symbols ) -> results.add( new Result( path, symbols ) ) );
+				}
+				return null;
+			} );
+		} catch( CancellationException e ) {
+			// a newer query replaced this one, the results found so far were already handed out
+		} catch( IOException | RuntimeException e ) { // the results found so far are kept
+			Log.warn( "Could not search for symbol '" + query + "'. An exception happened while reading files in the workspace.\n" + e.getMessage() );
+		} finally {
+			results.add( END );
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The symbols of the modules of a workspace and the places they occur, as they were when the server last ran,
+ * so that a restarted server does not have to parse the whole workspace again.
+ * The snapshot is a binary file in ".jolie-ls/symbols.bin" under the root of the workspace. It is read into memory,
+ * not mapped, so the file is never locked and can be replaced while the server runs. Each entry is only decoded
+ * and validated (size, modification time, and content hash if those changed) when its module is looked up,
+ * both for the module and for the modules it imports from, so only the modules that changed or whose
+ * imports changed are parsed.
+ * The snapshot is only used if it was written for the same Jolie version and include paths.
+ * It can be disabled through the "inspector.symbolSnapshot.enabled" setting.
+ */
+final class SymbolSnapshot {
+	/**
+	 * The summary of a module together with the stamp of the file it was made from,
+	 * and the stamps of the modules it imports from, whose symbols it refers to
+	 */
+	static final class Entry {
+		private final ModuleSummary summary;
+		private final ParseCache.FileStamp stamp;
+		private final Map< URI, ParseCache.FileStamp > dependencies;
+
+		Entry( ModuleSummary summary, ParseCache.FileStamp stamp, Map< URI, ParseCache.FileStamp > dependencies ) {
+			this.summary = summary;
+			this.stamp = stamp;
+			this.dependencies = dependencies;
+		}
+
+		ModuleSummary summary() {
+			return summary;
+		}
+
+		ParseCache.FileStamp stamp() {
+			return stamp;
+		}
+
+		Map< URI, ParseCache.FileStamp > dependencies() {
+			return dependencies;
+		}
+	}
+
+	private static final int MAGIC = 0x4a4c5353; // JLSS
+	private static final int FORMAT_VERSION = 3;
+	private static final String DIRECTORY = ".jolie-ls";
+	private static final String FILE_NAME = "symbols.bin";
+	private static final long SAVE_DELAY_MILLIS = 2000;
+
+	private static final boolean ENABLED = InspectorSettings.getBoolean( "inspector.symbolSnapshot.enabled", true );
+	private static final SymbolSnapshot EMPTY = new SymbolSnapshot( null, Collections.emptyMap() );
+
+	private static final ScheduledExecutorService SAVER = Executors.newSingleThreadScheduledExecutor( runnable -> {
+		Thread thread = new Thread( runnable, "inspector-symbol-snapshot" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+	private static final Set< Path > PENDING_SAVES = ConcurrentHashMap.newKeySet();
+
+	private final ByteBuffer buffer;
+	// path of the module -> position of its entry in the buffer
+	private final Map< String, Integer > positions;
+
+	private SymbolSnapshot( ByteBuffer buffer, Map< String, Integer > positions ) {
+		this.buffer = buffer;
+		this.positions = positions;
+	}
+
+	/**
+	 * Reads the snapshot of the workspace and the positions of its entries
+	 * @param root the root of the workspace
+	 * @param fingerprint the Jolie version and include paths the modules are parsed with
+	 * @return the snapshot, which is empty if it is missing, disabled, or written with another fingerprint
+	 */
+	static SymbolSnapshot open( Path root, String fingerprint ) {
+		Path file = root.resolve( DIRECTORY ).resolve( FILE_NAME );
+		if( !ENABLED || !Files.isRegularFile( file ) ) {
+			return EMPTY;
+		}
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap( Metrics.readAllBytes( file ) );
+			if( buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || !readString( buffer ).equals( fingerprint ) ) {
+				return EMPTY;
+			}
+			int count = buffer.getInt();
+			Map< String, Integer > positions = new HashMap<>( count * 2 );
+			for( int i = 0; i < count; i++ ) {
+				String path = readString( buffer );
+				positions.put( path, buffer.getInt() );
+			}
+			int entriesStart = buffer.position();
+			positions.replaceAll( ( path, offset ) -> entriesStart + offset );
+			return new SymbolSnapshot( buffer, positions );
+		} catch( IOException | BufferUnderflowException | IllegalArgumentException e ) {
+			return EMPTY; // a broken snapshot is simply rebuilt
+		}
+	}
+
+	/**
+	 * @param file a module of the workspace, as an absolute normalized path
+	 * @return the entry of the module, or null if it is not in the snapshot or the file changed since
+	 */
+	Entry lookup( File file ) {
+		Integer position = positions.get( file.toString() );
+		if( position == null ) {
+			return null;
+		}
+		try {
+			ByteBuffer entry = buffer.duplicate();
+			entry.position( position );
+			ParseCache.FileStamp stamp = readStamp( entry );
+			URI uri = file.toURI();
+			if( !stamp.isUnchanged( uri ) ) {
+				return null;
+			}
+			if( stamp.size() != file.length() || stamp.lastModified() != file.lastModified() ) {
+				// the file was only touched, the new stamp avoids hashing it again next time
+				stamp = ParseCache.FileStamp.of( uri );
+			}
+			// the imported symbols are only right if the modules they come from did not change either
+			int dependencyCount = entry.getInt();
+			Map< URI, ParseCache.FileStamp > dependencies = new HashMap<>( dependencyCount * 2 );
+			for( int i = 0; i < dependencyCount; i++ ) {
+				URI dependency = URI.create( readString( entry ) );
+				ParseCache.FileStamp dependencyStamp = readStamp( entry );
+				if( !dependencyStamp.isUnchanged( dependency ) ) {
+					return null;
+				}
+				dependencies.put( dependency, dependencyStamp );
+			}
+			int symbolCount = entry.getInt();
+			List< ModuleSummary.Symbol > symbols = new ArrayList<>( symbolCount );
+			for( int i = 0; i < symbolCount; i++ ) {
+				String name = readString( entry );
+				ModuleSummary.Kind kind = ModuleSummary.Kind.values()[ entry.get() ];
+				int line = entry.getInt();
+				int column = entry.getInt();
+				String originUri = null;
+				String originalName = null;
+				if( entry.get() != 0 ) {
+					originUri = readString( entry );
+					originalName = readString( entry );
+				}
+				symbols.add( new ModuleSummary.Symbol( name, kind, line, column, originUri, originalName ) );
+			}
+			int occurrenceCount = entry.getInt();
+			List< ModuleSummary.Occurrence > occurrences = new ArrayList<>( occurrenceCount );
+			for( int i = 0; i < occurrenceCount; i++ ) {
+				String name = readString( entry );
+				int line = entry.getInt();
+				int startCharacter = entry.getInt();
+				int endCharacter = entry.getInt();
+				occurrences.add( new ModuleSummary.Occurrence( name, line, startCharacter, endCharacter, entry.get() != 0 ) );
+			}
+			return new Entry( new ModuleSummary( file.toString(), symbols, occurrences ), stamp, dependencies );
+		} catch( BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e ) {
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the snapshot of the workspace after a short delay, so that a burst of updates results in a single write
+	 * @param root the root of the workspace
+	 * @param save writes the snapshot, see write
+	 */
+	static void scheduleSave( Path root, Runnable save ) {
+		if( ENABLED && PENDING_SAVES.add( root ) ) {
+			SAVER.schedule( () -> {
+				PENDING_SAVES.remove( root );
+				save.run();
+			}, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS );
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file which then replaces the old snapshot,
+	 * failures are ignored as the snapshot is only an optimization
+	 * @param root the root of the workspace
+	 * @param fingerprint the Jolie version and include paths the modules were parsed with
+	 * @param entries the modules of the workspace
+	 */
+	static void write( Path root, String fingerprint, Collection< Entry > entries ) {
+		try {
+			ByteArrayOutputStream entriesBytes = new ByteArrayOutputStream();
+			DataOutputStream entriesOut = new DataOutputStream( entriesBytes );
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream( headerBytes );
+			header.writeInt( MAGIC );
+			header.writeInt( FORMAT_VERSION );
+			writeString( header, fingerprint );
+			header.writeInt( entries.size() );
+			for( Entry entry : entries ) {
+				writeString( header, entry.summary.path() );
+				header.writeInt( entriesOut.size() );
+				writeStamp( entriesOut, entry.stamp );
+				entriesOut.writeInt( entry.dependencies.size() );
+				for( Map.Entry< URI, ParseCache.FileStamp > dependency : entry.dependencies.entrySet() ) {
+					writeString( entriesOut, dependency.getKey().toString() );
+					writeStamp( entriesOut, dependency.getValue() );
+				}
+				entriesOut.writeInt( entry.summary.symbols().size() );
+				for( ModuleSummary.Symbol symbol : entry.summary.symbols() ) {
+					writeString( entriesOut, symbol.name() );
+					entriesOut.writeByte( symbol.kind().ordinal() );
+					entriesOut.writeInt( symbol.line() );
+					entriesOut.writeInt( symbol.column() );
+					entriesOut.writeBoolean( symbol.isImported() );
+					if( symbol.isImported() ) {
+						writeString( entriesOut, symbol.originUri() );
+						writeString( entriesOut, symbol.originalName() );
+					}
+				}
+				entriesOut.writeInt( entry.summary.occurrences().size() );
+				for( ModuleSummary.Occurrence occurrence : entry.summary.occurrences() ) {
+					writeString( entriesOut, occurrence.name() );
+					entriesOut.writeInt( occurrence.line() );
+					entriesOut.writeInt( occurrence.startCharacter() );
+					entriesOut.writeInt( occurrence.endCharacter() );
+					entriesOut.writeBoolean( occurrence.isDeclaration() );
+				}
+			}
+			Path directory = Files.createDirectories( root.resolve( DIRECTORY ) );
+			Path temporary = Files.createTempFile( directory, FILE_NAME, ".tmp" );
+			try {
+				try( OutputStream out = Files.newOutputStream( temporary ) ) {
+					headerBytes.writeTo( out );
+					entriesBytes.writeTo( out );
+				}
+				Files.move( temporary, directory.resolve( FILE_NAME ), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE );
+			} finally {
+				Files.deleteIfExists( temporary );
+			}
+		} catch( IOException | UnsupportedOperationException e ) {
+			// e.g. a read-only workspace, the next run parses the workspace instead
+		}
+	}
+
+	private static void writeStamp( DataOutputStream out, ParseCache.FileStamp stamp ) throws IOException {
+		out.writeLong( stamp.size() );
+		out.writeLong( stamp.lastModified() );
+		out.writeInt( stamp.contentHash().length );
+		out.write( stamp.contentHash() );
+	}
+
+	private static ParseCache.FileStamp readStamp( ByteBuffer buffer ) {
+		long size = buffer.getLong();
+		long lastModified = buffer.getLong();
+		int hashLength = buffer.getInt();
+		if( hashLength < 0 || hashLength > buffer.remaining() ) {
+			throw new BufferUnderflowException();
+		}
+		byte[] contentHash = new byte[ hashLength ];
+		buffer.get( contentHash );
+		return ParseCache.FileStamp.restore( size, lastModified, contentHash );
+	}
+
+	private static void writeString( DataOutputStream out, String value ) throws IOException {
+		byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+	}
+
+	private static String readString( ByteBuffer buffer ) {
+		int length = buffer.getInt();
+		if( length < 0 || length > buffer.remaining() ) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[ length ];
+		buffer.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+}
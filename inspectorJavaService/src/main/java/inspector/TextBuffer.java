@@ -0,0 +1,324 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+/**
+ * The text of an open document, stored as an immutable balanced rope.
+ * The leaves hold chunks of at most MAX_LEAF characters, and every node caches its length and the number of
+ * newlines below it, so replacing a range and finding where a line starts both take O(log n),
+ * no matter how long the document is.
+ * Offsets, lines and characters are counted in UTF-16 code units like in the language server protocol.
+ * Lines end with "\n", "\r\n" or "\r", like in LineIndex. A "\r\n" split between two nodes is counted once,
+ * at its "\n", by their parent.
+ */
+final class TextBuffer {
+	private static final int MAX_LEAF = 512;
+
+	private static final TextBuffer EMPTY = new TextBuffer( null );
+
+	private abstract static class Node {
+		final int length;
+		final int newlines;
+		final int height;
+		final boolean startsWithLineFeed;
+		final boolean endsWithCarriageReturn;
+
+		Node( int length, int newlines, int height, boolean startsWithLineFeed, boolean endsWithCarriageReturn ) {
+			this.length = length;
+			this.newlines = newlines;
+			this.height = height;
+			this.startsWithLineFeed = startsWithLineFeed;
+			this.endsWithCarriageReturn = endsWithCarriageReturn;
+		}
+	}
+
+	private static final class Leaf extends Node {
+		final String text;
+
+		// a "\r" at the end counts as a line break, its parent uncounts it if the "\n" follows in the next node
+		Leaf( String text ) {
+			super( text.length(), countNewlines( text ), 0, text.startsWith( "\n" ), text.endsWith( "\r" ) );
+			this.text = text;
+		}
+	}
+
+	private static final class Branch extends Node {
+		final Node left;
+		final Node right;
+
+		Branch( Node left, Node right ) {
+			super( left.length + right.length, left.newlines + right.newlines - (splitsLineBreak( left, right ) ? 1 : 0),
+				Math.max( left.height, right.height ) + 1, left.startsWithLineFeed, right.endsWithCarriageReturn );
+			this.left = left;
+			this.right = right;
+		}
+
+		// the line breaks of the left node that are not the first half of a "\r\n" continuing in the right one
+		int leftNewlines() {
+			return left.newlines - (splitsLineBreak( left, right ) ? 1 : 0);
+		}
+	}
+
+	// null for the empty text
+	private final Node root;
+
+	private TextBuffer( Node root ) {
+		this.root = root;
+	}
+
+	static TextBuffer of( String text ) {
+		return text.isEmpty() ? EMPTY : new TextBuffer( build( text, 0, text.length() ) );
+	}
+
+	int length() {
+		return root == null ? 0 : root.length;
+	}
+
+	int lineCount() {
+		return root == null ? 1 : root.newlines + 1;
+	}
+
+	/**
+	 * @param start the offset of the first character to replace
+	 * @param end the offset after the last character to replace
+	 * @param text the text to put in place of the range
+	 * @return a new buffer with the range replaced, this buffer is left untouched
+	 */
+	TextBuffer replace( int start, int end, String text ) {
+		if( start < 0 || end < start || end > length() ) {
+			throw new IndexOutOfBoundsException( "range " + start + "-" + end + " of a text of length " + length() );
+		}
+		Node[] head = split( root, start );
+		Node[] tail = split( head[ 1 ], end - start );
+		Node middle = text.isEmpty() ? null : build( text, 0, text.length() );
+		return new TextBuffer( join( join( head[ 0 ], middle ), tail[ 1 ] ) );
+	}
+
+	/**
+	 * @param line a zero based line number
+	 * @return the offset of the first character of the line, the length of the text if the line does not exist
+	 */
+	int lineStart( int line ) {
+		if( line <= 0 ) {
+			return 0;
+		}
+		if( line >= lineCount() ) {
+			return length();
+		}
+		int offset = 0;
+		int newlinesToSkip = line;
+		Node node = root;
+		while( node instanceof Branch ) {
+			Branch branch = (Branch) node;
+			if( branch.leftNewlines() >= newlinesToSkip ) {
+				node = branch.left;
+			} else {
+				newlinesToSkip -= branch.leftNewlines();
+				offset += branch.left.length;
+				node = branch.right;
+			}
+		}
+		String text = ((Leaf) node).text;
+		for( int i = 0; i < text.length(); i++ ) {
+			if( isLineBreakEnd( text, i ) && --newlinesToSkip == 0 ) {
+				return offset + i + 1;
+			}
+		}
+		return offset + text.length();
+	}
+
+	/**
+	 * @param line a zero based line number, which exists
+	 * @return the offset after the last character of the line, before its line break
+	 */
+	private int lineEnd( int line ) {
+		if( line + 1 >= lineCount() ) {
+			return length();
+		}
+		int nextStart = lineStart( line + 1 );
+		return nextStart >= 2 && charAt( nextStart - 1 ) == '\n' && charAt( nextStart - 2 ) == '\r'
+			? nextStart - 2
+			: nextStart - 1;
+	}
+
+	private char charAt( int offset ) {
+		Node node = root;
+		while( node instanceof Branch ) {
+			Branch branch = (Branch) node;
+			if( offset < branch.left.length ) {
+				node = branch.left;
+			} else {
+				offset -= branch.left.length;
+				node = branch.right;
+			}
+		}
+		return ((Leaf) node).text.charAt( offset );
+	}
+
+	/**
+	 * @param line a zero based line number
+	 * @param character a zero based character in the line, clamped to the end of the line
+	 * @return the offset of the position in the text
+	 */
+	int offsetAt( int line, int character ) {
+		if( line >= lineCount() ) {
+			return length();
+		}
+		int start = lineStart( line );
+		return start + Math.max( 0, Math.min( character, lineEnd( line ) - start ) );
+	}
+
+	/**
+	 * @param line a zero based line number
+	 * @return the text of the line without its newline, or null if the line does not exist
+	 */
+	String line( int line ) {
+		if( line < 0 || line >= lineCount() ) {
+			return null;
+		}
+		return substring( lineStart( line ), lineEnd( line ) );
+	}
+
+	String substring( int start, int end ) {
+		StringBuilder builder = new StringBuilder( end - start );
+		append( root, start, end, builder );
+		return builder.toString();
+	}
+
+	@Override
+	public String toString() {
+		return substring( 0, length() );
+	}
+
+	private static void append( Node node, int start, int end, StringBuilder builder ) {
+		if( node == null || start >= end ) {
+			return;
+		}
+		if( node instanceof Leaf ) {
+			builder.append( ((Leaf) node).text, start, end );
+			return;
+		}
+		Branch branch = (Branch) node;
+		int leftLength = branch.left.length;
+		if( start < leftLength ) {
+			append( branch.left, start, Math.min( end, leftLength ), builder );
+		}
+		if( end > leftLength ) {
+			append( branch.right, Math.max( 0, start - leftLength ), end - leftLength, builder );
+		}
+	}
+
+	private static Node build( String text, int start, int end ) {
+		if( end - start <= MAX_LEAF ) {
+			return new Leaf( text.substring( start, end ) );
+		}
+		int middle = start + (end - start) / 2;
+		return new Branch( build( text, start, middle ), build( text, middle, end ) );
+	}
+
+	// returns the nodes holding the text before and after the offset, either can be null
+	private static Node[] split( Node node, int offset ) {
+		if( node == null ) {
+			return new Node[] { null, null };
+		}
+		if( offset <= 0 ) {
+			return new Node[] { null, node };
+		}
+		if( offset >= node.length ) {
+			return new Node[] { node, null };
+		}
+		if( node instanceof Leaf ) {
+			String text = ((Leaf) node).text;
+			return new Node[] { new Leaf( text.substring( 0, offset ) ), new Leaf( text.substring( offset ) ) };
+		}
+		Branch branch = (Branch) node;
+		if( offset <= branch.left.length ) {
+			Node[] parts = split( branch.left, offset );
+			return new Node[] { parts[ 0 ], join( parts[ 1 ], branch.right ) };
+		}
+		Node[] parts = split( branch.right, offset - branch.left.length );
+		return new Node[] { join( branch.left, parts[ 0 ] ), parts[ 1 ] };
+	}
+
+	// concatenates two ropes, descending the spine of the higher one so the result stays balanced
+	private static Node join( Node left, Node right ) {
+		if( left == null ) {
+			return right;
+		}
+		if( right == null ) {
+			return left;
+		}
+		if( left instanceof Leaf && right instanceof Leaf && left.length + right.length <= MAX_LEAF ) {
+			return new Leaf( ((Leaf) left).text + ((Leaf) right).text );
+		}
+		if( left.height > right.height + 1 ) {
+			Branch branch = (Branch) left;
+			return balance( branch.left, join( branch.right, right ) );
+		}
+		if( right.height > left.height + 1 ) {
+			Branch branch = (Branch) right;
+			return balance( join( left, branch.left ), branch.right );
+		}
+		return new Branch( left, right );
+	}
+
+	private static Node balance( Node left, Node right ) {
+		if( left.height > right.height + 1 ) {
+			Branch branch = (Branch) left;
+			if( branch.left.height >= branch.right.height ) {
+				return new Branch( branch.left, new Branch( branch.right, right ) );
+			}
+			Branch inner = (Branch) branch.right;
+			return new Branch( new Branch( branch.left, inner.left ), new Branch( inner.right, right ) );
+		}
+		if( right.height > left.height + 1 ) {
+			Branch branch = (Branch) right;
+			if( branch.right.height >= branch.left.height ) {
+				return new Branch( new Branch( left, branch.left ), branch.right );
+			}
+			Branch inner = (Branch) branch.left;
+			return new Branch( new Branch( left, inner.left ), new Branch( inner.right, branch.right ) );
+		}
+		return new Branch( left, right );
+	}
+
+	private static int countNewlines( String text ) {
+		int count = 0;
+		for( int i = 0; i < text.length(); i++ ) {
+			if( isLineBreakEnd( text, i ) ) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// a "\n", or a "\r" that is not followed by a "\n" in the same text
+	private static boolean isLineBreakEnd( String text, int i ) {
+		char c = text.charAt( i );
+		return c == '\n' || (c == '\r' && (i + 1 == text.length() || text.charAt( i + 1 ) != '\n'));
+	}
+
+	private static boolean splitsLineBreak( Node left, Node right ) {
+		return left.endsWithCarriageReturn && right.startsWithLineFeed;
+	}
+}
@@ -0,0 +1,66 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the best k of the items offered to it, in a heap whose head is the worst item kept,
+ * so selecting the best k of n items takes O(n log k) time and O(k) memory instead of sorting all of them
+ */
+final class TopK< T > {
+	private final int k;
+	private final Comparator< T > order;
+	private final PriorityQueue< T > heap;
+
+	/**
+	 * @param k how many items to keep
+	 * @param order sorts the better items first
+	 */
+	TopK( int k, Comparator< T > order ) {
+		this.k = Math.max( 0, k );
+		this.order = order;
+		this.heap = new PriorityQueue<>( Math.min( this.k, 1024 ) + 1, order.reversed() );
+	}
+
+	void offer( T item ) {
+		if( heap.size() < k ) {
+			heap.add( item );
+		} else if( k > 0 && order.compare( item, heap.peek() ) < 0 ) {
+			heap.poll();
+			heap.add( item );
+		}
+	}
+
+	/**
+	 * @return the items kept, best first
+	 */
+	List< T > sorted() {
+		List< T > items = new ArrayList<>( heap );
+		items.sort( order );
+		return items;
+	}
+}
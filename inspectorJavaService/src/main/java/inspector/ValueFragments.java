@@ -0,0 +1,140 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.lang.parse.ast.InterfaceDefinition;
+import jolie.lang.parse.ast.types.TypeDefinition;
+import jolie.runtime.Value;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The Values describing the types and interfaces of one version of a module, built once and then shared
+ * by all the ports and responses that refer to them.
+ * The fragments are looked up by the identity of the TypeDefinition or InterfaceDefinition, and they belong
+ * to the InspectionResult of the module, so they are dropped together with the parse result they describe
+ * as soon as the module or one of its imports changes.
+ * Responses contain the shared fragments themselves, so they must be treated as read only.
+ */
+final class ValueFragments {
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+	private static final AtomicLong RESPONSES = new AtomicLong();
+	private static final AtomicLong ALLOCATED_BYTES = new AtomicLong();
+
+	private final Map< TypeDefinition, Value > typeInfos = Collections.synchronizedMap( new IdentityHashMap<>() );
+	private final Map< InterfaceDefinition, InterfaceFragment > interfaces =
+		Collections.synchronizedMap( new IdentityHashMap<>() );
+
+	/**
+	 * The Value of an interface, together with the names of the types its operations refer to
+	 */
+	static final class InterfaceFragment {
+		private final Value value;
+		private final Set< String > referredTypes;
+
+		InterfaceFragment( Value value, Set< String > referredTypes ) {
+			this.value = value;
+			this.referredTypes = referredTypes;
+		}
+
+		Value value() {
+			return value;
+		}
+
+		Set< String > referredTypes() {
+			return referredTypes;
+		}
+	}
+
+	Value typeInfo( TypeDefinition type, Function< TypeDefinition, Value > builder ) {
+		return get( typeInfos, type, builder );
+	}
+
+	InterfaceFragment interfaceInfo( InterfaceDefinition interfaceDefinition,
+		Function< InterfaceDefinition, InterfaceFragment > builder ) {
+		return get( interfaces, interfaceDefinition, builder );
+	}
+
+	/*
+	 * The builders recurse into the same maps (e.g. for the subtypes of a type),
+	 * so the fragment is built outside of the lock, and the first one that is stored wins
+	 */
+	private static < K, V > V get( Map< K, V > fragments, K key, Function< K, V > builder ) {
+		V fragment = fragments.get( key );
+		if( fragment != null ) {
+			HITS.incrementAndGet();
+			return fragment;
+		}
+		MISSES.incrementAndGet();
+		fragment = builder.apply( key );
+		V existing = fragments.putIfAbsent( key, fragment );
+		return existing == null ? fragment : existing;
+	}
+
+	/**
+	 * Builds a response and records how many bytes the current thread allocated for it,
+	 * if the JVM supports measuring it
+	 */
+	static Value measure( Supplier< Value > response ) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if( !(threads instanceof com.sun.management.ThreadMXBean) ) {
+			RESPONSES.incrementAndGet();
+			return response.get();
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		long threadId = Thread.currentThread().getId();
+		long before = allocations.getThreadAllocatedBytes( threadId );
+		Value result = response.get();
+		long after = allocations.getThreadAllocatedBytes( threadId );
+		RESPONSES.incrementAndGet();
+		if( before >= 0 && after >= before ) {
+			ALLOCATED_BYTES.addAndGet( after - before );
+		}
+		return result;
+	}
+
+	static long hits() {
+		return HITS.get();
+	}
+
+	static long misses() {
+		return MISSES.get();
+	}
+
+	static long responses() {
+		return RESPONSES.get();
+	}
+
+	static long allocatedBytes() {
+		return ALLOCATED_BYTES.get();
+	}
+}
@@ -0,0 +1,432 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import jolie.cli.CommandLineException;
+import jolie.lang.CodeCheckException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of the symbols of all the modules in a workspace, of where they occur, and of which modules import from which.
+ * The index is built the first time it is needed by parsing every module in the workspace in parallel,
+ * and afterwards it is kept up to date one file at a time, so that queries never touch the disk or the parser.
+ * The modules that did not change since the last run of the server are taken from the SymbolSnapshot
+ * of the workspace instead of being parsed, and the snapshot is saved again whenever the index changes.
+ */
+final class WorkspaceIndex {
+	/**
+	 * Parses a module of the workspace and summarizes its symbols
+	 */
+	@FunctionalInterface
+	interface ModuleLoader {
+		ModuleSummary load( File file ) throws CommandLineException, IOException, CodeCheckException;
+	}
+
+	private static final Map< Path, WorkspaceIndex > INDEXES = new ConcurrentHashMap<>();
+
+	private final Path root;
+	private final String[] includePaths;
+	private final Map< String, ModuleSummary > modules = new HashMap<>();
+	// the summaries with the stamps of the files they were made from, for the snapshot
+	private final Map< String, SymbolSnapshot.Entry > snapshotEntries = new HashMap<>();
+	private final SymbolIndex symbols = new SymbolIndex();
+	private final OccurrenceIndex occurrences = new OccurrenceIndex();
+	private final ModuleDependencyGraph dependencies = new ModuleDependencyGraph();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile boolean built = false;
+	// the modules that changed or were deleted while the index was being built, refreshed once it is built
+	private final Set< File > pendingChanges = new LinkedHashSet<>();
+
+	private WorkspaceIndex( Path root, String[] includePaths ) {
+		this.root = root;
+		this.includePaths = includePaths;
+	}
+
+	/**
+	 * @param rootUri the root of the workspace, as given by the language server
+	 * @param includePaths the include paths used to parse the modules of the workspace
+	 * @return the index of the workspace, which might not be built yet
+	 */
+	static WorkspaceIndex forRoot( String rootUri, String[] includePaths ) {
+		return INDEXES.computeIfAbsent( normalize( new File( rootUri ) ),
+			root -> new WorkspaceIndex( root, includePaths.clone() ) );
+	}
+
+	/**
+	 * @param file a file that might be in one or more workspaces
+	 * @return the indexes of all the workspaces containing the file
+	 */
+	static List< WorkspaceIndex > containing( File file ) {
+		Path path = normalize( file );
+		return INDEXES.values().stream().filter( index -> path.startsWith( index.root ) )
+			.collect( Collectors.toList() );
+	}
+
+	String[] includePaths() {
+		return includePaths.clone();
+	}
+
+	boolean isBuilt() {
+		return built;
+	}
+
+	/**
+	 * Builds the index if it has not been built yet, modules that do not compile are left out
+	 * @param loader parses the modules
+	 * @throws IOException if the workspace could not be listed
+	 */
+	void ensureBuilt( ModuleLoader loader ) throws IOException {
+		ensureBuilt( loader, CancellationRegistry.NONE );
+	}
+
+	/**
+	 * Builds the index if it has not been built yet, a cancelled build is abandoned and started again
+	 * by the next operation, which finds the modules parsed so far in the ParseCache
+	 * @param loader parses the modules
+	 * @param token the token of the operation needing the index
+	 * @throws IOException if the workspace could not be listed
+	 * @throws CancellationException if the operation was cancelled
+	 */
+	void ensureBuilt( ModuleLoader loader, CancellationRegistry.Token token ) throws IOException {
+		ensureBuilt( loader, token, summary -> {} );
+	}
+
+	/**
+	 * Builds the index if it has not been built yet, telling the listener about every module as soon as it is summarized
+	 * @param loader parses the modules
+	 * @param token the token of the operation needing the index
+	 * @param listener called for every module of the workspace that compiles, from the threads of the scan
+	 * @return true if the index was built by this call, false if it was already built and the listener was not called
+	 * @throws IOException if the workspace could not be listed
+	 * @throws CancellationException if the operation was cancelled
+	 */
+	boolean ensureBuilt( ModuleLoader loader, CancellationRegistry.Token token, Consumer< ModuleSummary > listener )
+		throws IOException {
+		if( built ) {
+			return false;
+		}
+		synchronized( this ) {
+			if( built ) {
+				return false;
+			}
+			SymbolSnapshot snapshot = SymbolSnapshot.open( root, fingerprint() );
+			List< SymbolSnapshot.Entry > summaries;
+			try {
+				File[] modules = listModules();
+				Metrics.instance().filesScanned( "buildWorkspaceIndex", modules.length );
+				summaries = WorkspaceScanner.scan( modules, olFile -> {
+					SymbolSnapshot.Entry entry = snapshot.lookup( olFile );
+					if( entry == null ) {
+						try {
+							entry = load( olFile, loader );
+						} catch( CommandLineException | IOException | CodeCheckException ex ) {
+							// the module is indexed once it compiles and is updated, its importers are found meanwhile
+							addLexicalImports( olFile );
+							return null;
+						}
+					}
+					listener.accept( entry.summary() );
+					return entry;
+				}, token );
+			} catch( IOException | CancellationException e ) {
+				throw e;
+			} catch( Exception e ) { // the jobs only throw unchecked exceptions
+				throw new IllegalStateException( e );
+			}
+			summaries.removeIf( Objects::isNull );
+			List< File > changed;
+			lock.writeLock().lock();
+			try {
+				summaries.forEach( this::put );
+				synchronized( pendingChanges ) {
+					built = true;
+					changed = new ArrayList<>( pendingChanges );
+					pendingChanges.clear();
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			// the scan might have summarized these modules before they changed
+			for( File file : changed ) {
+				if( file.isFile() ) {
+					update( file, loader );
+				} else {
+					remove( file );
+				}
+			}
+			scheduleSnapshotSave();
+			return true;
+		}
+	}
+
+	/**
+	 * Parses the module again and replaces its symbols.
+	 * If the module does not compile anymore its old symbols are kept, as they are probably still mostly right.
+	 * @param file the module that changed
+	 * @param loader parses the module
+	 */
+	void update( File file, ModuleLoader loader ) {
+		if( deferUntilBuilt( file ) ) {
+			return;
+		}
+		try {
+			SymbolSnapshot.Entry entry = load( normalize( file ).toFile(), loader );
+			lock.writeLock().lock();
+			try {
+				put( entry );
+			} finally {
+				lock.writeLock().unlock();
+			}
+			scheduleSnapshotSave();
+		} catch( CommandLineException | IOException | CodeCheckException ex ) {
+			// keep the old symbols, but it might import from other modules by now
+			addLexicalImports( file );
+		}
+	}
+
+	/**
+	 * @param file the module that was deleted
+	 */
+	void remove( File file ) {
+		if( deferUntilBuilt( file ) ) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			ModuleSummary old = modules.remove( normalize( file ).toString() );
+			if( old != null ) {
+				snapshotEntries.remove( old.path() );
+				symbols.remove( old );
+				occurrences.remove( old );
+			}
+			dependencies.remove( normalize( file ).toString() );
+		} finally {
+			lock.writeLock().unlock();
+		}
+		scheduleSnapshotSave();
+	}
+
+	/**
+	 * @param file a module that changed or was deleted
+	 * @return true if the index is not built yet, then the module is refreshed as soon as it is
+	 */
+	private boolean deferUntilBuilt( File file ) {
+		synchronized( pendingChanges ) {
+			if( !built ) {
+				pendingChanges.add( normalize( file ).toFile() );
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @param query the text to look for
+	 * @param prefixOnly if true, only symbols starting with the query match, otherwise the ones containing it
+	 * @return the matching symbols grouped by module path, ordered by path
+	 */
+	SortedMap< String, List< ModuleSummary.Symbol > > query( String query, boolean prefixOnly ) {
+		SortedMap< String, List< ModuleSummary.Symbol > > result = new TreeMap<>();
+		lock.readLock().lock();
+		try {
+			List< SymbolIndex.Entry > entries = prefixOnly ? symbols.queryPrefix( query ) : symbols.query( query );
+			for( SymbolIndex.Entry entry : entries ) {
+				result.computeIfAbsent( entry.modulePath(), p -> new ArrayList<>() ).add( entry.symbol() );
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * @param query the text to match, see FuzzyMatcher
+	 * @param limit how many symbols to return at most
+	 * @return the best matching symbols grouped by module path, the modules ordered by their best match
+	 * and the symbols of a module best match first
+	 */
+	Map< String, List< ModuleSummary.Symbol > > queryRanked( String query, int limit ) {
+		Map< String, List< ModuleSummary.Symbol > > result = new LinkedHashMap<>();
+		lock.readLock().lock();
+		try {
+			for( SymbolIndex.Entry entry : symbols.queryRanked( query, limit ) ) {
+				result.computeIfAbsent( entry.modulePath(), p -> new ArrayList<>() ).add( entry.symbol() );
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * @param declarationKey the key of a declared symbol, see ModuleSummary.declarationKey
+	 * @return the occurrences of the symbol grouped by module path, ordered by path
+	 */
+	SortedMap< String, List< ModuleSummary.Occurrence > > references( String declarationKey ) {
+		lock.readLock().lock();
+		try {
+			return occurrences.references( declarationKey );
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param file a module of the workspace
+	 * @return the indexed summary of the module, or null if it is not indexed
+	 */
+	ModuleSummary summary( File file ) {
+		lock.readLock().lock();
+		try {
+			return modules.get( normalize( file ).toString() );
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param module the normalized uri of the module declaring a symbol
+	 * @return the modules importing from the module, directly or through other modules, ordered by path
+	 */
+	File[] importersOf( URI module ) {
+		return dependencies.transitiveImporters( module ).stream().map( File::new ).sorted().toArray( File[]::new );
+	}
+
+	/**
+	 * @return all the modules under the root of the workspace as absolute paths, ordered by path
+	 * @throws IOException
+	 */
+	File[] listModules() throws IOException {
+		try( Stream< Path > allFiles = Files.walk( root ) ) {
+			return allFiles.filter( Files::isRegularFile ).filter( path -> path.toString().endsWith( ".ol" ) )
+				.sorted().map( Path::toFile ).toArray( File[]::new );
+		}
+	}
+
+	// for a module that does not compile, whose edges would otherwise be missing from the dependency graph
+	private void addLexicalImports( File file ) {
+		try {
+			String source = Metrics.readString( file.toPath() );
+			dependencies.addImports( ModuleDependencyGraph.uriOf( file.getPath() ),
+				ModuleDependencyGraph.lexicalImports( file, source, root, includePaths ) );
+		} catch( IOException ex ) {
+			// it is gone or unreadable, so it imports nothing
+		}
+	}
+
+	/**
+	 * Finds the modules importing from a module, for a rename, including unsaved importers.
+	 * The open documents are checked lexically, since their imports might not be saved yet
+	 * @param module the normalized uri of the module declaring a symbol
+	 * @param openSources the sources of the open documents by file
+	 * @return the modules importing from the module, directly or through other modules, ordered by path
+	 */
+	File[] importersOf( URI module, Map< File, String > openSources ) {
+		Set< URI > result = dependencies.transitiveImporters( module );
+		boolean found = true;
+		while( found ) { // an unsaved import can make another open document an importer too
+			found = false;
+			for( Map.Entry< File, String > open : openSources.entrySet() ) {
+				URI openModule = ModuleDependencyGraph.uriOf( open.getKey().getPath() );
+				if( openModule.equals( module ) || result.contains( openModule )
+					|| !normalize( open.getKey() ).startsWith( root ) ) {
+					continue;
+				}
+				Set< URI > imported = ModuleDependencyGraph.lexicalImports( open.getKey(), open.getValue(), root, includePaths );
+				if( imported.contains( module ) || !Collections.disjoint( imported, result ) ) {
+					result.add( openModule );
+					result.addAll( dependencies.transitiveImporters( openModule ) );
+					found = true;
+				}
+			}
+		}
+		return result.stream().map( File::new ).sorted().toArray( File[]::new );
+	}
+
+	private static SymbolSnapshot.Entry load( File file, ModuleLoader loader )
+		throws CommandLineException, IOException, CodeCheckException {
+		// the stamp is taken before parsing, so a change during the parse is seen by the next run
+		ParseCache.FileStamp stamp = ParseCache.FileStamp.of( file.toURI() );
+		ModuleSummary summary = loader.load( file );
+		// the modules it imports from are stamped after parsing, like in the ParseCache
+		URI uri = file.toURI().normalize();
+		Map< URI, ParseCache.FileStamp > dependencies = new HashMap<>();
+		for( ModuleSummary.Symbol symbol : summary.symbols() ) {
+			if( symbol.isImported() ) {
+				URI dependency = URI.create( symbol.originUri() ).normalize();
+				if( !dependency.equals( uri ) ) {
+					dependencies.computeIfAbsent( dependency, ParseCache.FileStamp::of );
+				}
+			}
+		}
+		return new SymbolSnapshot.Entry( summary, stamp, dependencies );
+	}
+
+	private String fingerprint() {
+		return StandardLibraryIndex.jolieVersion() + "\u0000" + String.join( File.pathSeparator, includePaths );
+	}
+
+	private void scheduleSnapshotSave() {
+		SymbolSnapshot.scheduleSave( root, () -> {
+			List< SymbolSnapshot.Entry > entries = new ArrayList<>();
+			lock.readLock().lock();
+			try {
+				entries.addAll( snapshotEntries.values() );
+			} finally {
+				lock.readLock().unlock();
+			}
+			SymbolSnapshot.write( root, fingerprint(), entries );
+		} );
+	}
+
+	// must hold the write lock
+	private void put( SymbolSnapshot.Entry entry ) {
+		ModuleSummary summary = entry.summary();
+		snapshotEntries.put( summary.path(), entry );
+		ModuleSummary old = modules.put( summary.path(), summary );
+		if( old != null ) {
+			symbols.remove( old );
+			occurrences.remove( old );
+		}
+		symbols.add( summary );
+		occurrences.add( summary );
+		dependencies.update( summary );
+	}
+
+	private static Path normalize( File file ) {
+		return file.getAbsoluteFile().toPath().normalize();
+	}
+}
@@ -0,0 +1,127 @@
+/* MIT License
+ *
+ * Copyright (c) 2022 Vicki Mixen <vicki@mixen.dk>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package inspector;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs a job on every file of a workspace scan in parallel.
+ * The jobs run on a shared, bounded fork-join pool whose size is given by the
+ * "inspector.workspace.parallelism" setting (the number of processors by default, 1 disables parallelism).
+ * A scan can be cancelled through the token of its operation, which is checked before every file.
+ */
+final class WorkspaceScanner {
+	/**
+	 * The work to do for a single file
+	 */
+	@FunctionalInterface
+	interface Job< T > {
+		T run( File file ) throws Exception;
+	}
+
+	private static final int PARALLELISM = Math.max( 1,
+		InspectorSettings.getInt( "inspector.workspace.parallelism", Runtime.getRuntime().availableProcessors() ) );
+
+	private static final ForkJoinPool POOL = new ForkJoinPool( PARALLELISM );
+	// how often a waiting scan checks whether it was cancelled
+	private static final long CANCELLATION_POLL_MILLIS = 5;
+
+	private WorkspaceScanner() {}
+
+	/**
+	 * Runs the job on all files and waits for all of them.
+	 * If a job fails, the jobs that have not finished yet are cancelled and the exception is rethrown,
+	 * so the caller never sees the results of a partial scan.
+	 * @param files the files to scan
+	 * @param job the job to run for each file
+	 * @return the results of the jobs, in the same order as files
+	 * @throws Exception the first exception thrown by a job
+	 */
+	static < T > List< T > scan( File[] files, Job< T > job ) throws Exception {
+		return scan( files, job, CancellationRegistry.NONE );
+	}
+
+	/**
+	 * Runs the job on all files and waits for all of them, unless the operation is cancelled
+	 * @param files the files to scan
+	 * @param job the job to run for each file
+	 * @param token the token of the operation the scan is part of
+	 * @return the results of the jobs, in the same order as files
+	 * @throws CancellationException if the operation was cancelled, the jobs that have not finished yet are cancelled
+	 * @throws Exception the first exception thrown by a job
+	 */
+	static < T > List< T > scan( File[] files, Job< T > job, CancellationRegistry.Token token ) throws Exception {
+		List< T > results = new ArrayList<>( files.length );
+		if( PARALLELISM == 1 || files.length < 2 ) {
+			for( File file : files ) {
+				token.check();
+				results.add( job.run( file ) );
+			}
+			return results;
+		}
+
+		CompletionService< Void > completionService = new ExecutorCompletionService<>( POOL );
+		List< Future< Void > > futures = new ArrayList<>( files.length );
+		for( int i = 0; i < files.length; i++ ) {
+			results.add( null );
+			final int index = i;
+			futures.add( completionService.submit( () -> {
+				token.check();
+				T result = job.run( files[ index ] );
+				synchronized( results ) {
+					results.set( index, result );
+				}
+				return null;
+			} ) );
+		}
+		try {
+			int done = 0;
+			while( done < files.length ) {
+				Future< Void > future = completionService.poll( CANCELLATION_POLL_MILLIS, TimeUnit.MILLISECONDS );
+				if( future != null ) {
+					future.get();
+					done++;
+				} else if( token.isCancelled() ) {
+					futures.forEach( f -> f.cancel( true ) );
+					token.check();
+				}
+			}
+		} catch( ExecutionException e ) {
+			futures.forEach( future -> future.cancel( true ) );
+			if( e.getCause() instanceof Exception ) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} catch( InterruptedException e ) {
+			futures.forEach( future -> future.cancel( true ) );
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+		synchronized( results ) {
+			return results;
+		}
+	}
+}